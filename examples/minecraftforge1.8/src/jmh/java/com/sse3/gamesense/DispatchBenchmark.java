@@ -0,0 +1,139 @@
+package com.sse3.gamesense;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// A tick's worth of events through the whole pipeline: EventDispatcher, the sender
+// thread, EventEncoder and NioHttpTransport, against a LoopbackEngine.
+//
+// gameThread measures only what the client thread pays (set values, enqueue, flush).
+// roundTrip also waits until Engine has answered for every event of the tick.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+	private static final String[] TICK_EVENTS = { "HEALTH", "HUNGERLEVEL", "HUNGRY", "AIRLEVEL", "FACING", "TOOL",
+			"TOOLMATERIAL", "TOOLDURABILITY" };
+
+	private LoopbackEngine engine;
+	private NioHttpTransport transport;
+	private EventDispatcher dispatcher;
+	private final EventEncoder encoder = new EventEncoder(GameSenseMod.GAME_NAME);
+	private GameEvent[] events;
+	// Events Engine has answered for. The request tag is the number of events it carried.
+	private final AtomicLong acknowledged = new AtomicLong();
+	private long expected = 0;
+	private int value = 0;
+
+	@Setup
+	public void setup() throws IOException {
+		this.engine = new LoopbackEngine();
+		this.transport = new NioHttpTransport(1000, 1000);
+		this.transport.setListener(new EngineTransport.Listener() {
+			@Override
+			public void onResponse(int tag, int status, long roundTripNanos) {
+				DispatchBenchmark.this.acknowledged.addAndGet(tag);
+			}
+
+			@Override
+			public void onFailure(int tag) {
+				throw new IllegalStateException("Loopback request failed");
+			}
+
+			@Override
+			public void onConnected(InetSocketAddress address) {
+			}
+
+			@Override
+			public void onConnectFailed(IOException cause) {
+				throw new IllegalStateException(cause);
+			}
+		});
+		this.transport.setAddress(this.engine.getAddress());
+
+		EventRegistry registry = new EventRegistry();
+		this.events = new GameEvent[TICK_EVENTS.length];
+		for (int i = 0; i < TICK_EVENTS.length; i++) {
+			this.events[i] = registry.register(TICK_EVENTS[i]);
+		}
+		this.dispatcher = new EventDispatcher(registry, 256, OverflowPolicy.DROP_OLDEST, 2000000000L, 32, new GameSenseMetrics(),
+				new EventDispatcher.Sender() {
+					@Override
+					public void send(List<GameEvent> batch) {
+						DispatchBenchmark.this.encoder.beginEvents();
+						for (int i = 0; i < batch.size(); i++) {
+							DispatchBenchmark.this.encoder.addEvent(batch.get(i));
+						}
+						DispatchBenchmark.this.encoder.endEvents();
+						DispatchBenchmark.this.transport.post("/multiple_game_events", DispatchBenchmark.this.encoder.getBuffer(),
+								DispatchBenchmark.this.encoder.getLength(), batch.size());
+					}
+
+					@Override
+					public boolean isReady() {
+						return DispatchBenchmark.this.transport.isReady();
+					}
+
+					@Override
+					public void service(long timeoutNanos) {
+						DispatchBenchmark.this.transport.poll(timeoutNanos);
+					}
+
+					@Override
+					public void wakeup() {
+						DispatchBenchmark.this.transport.wakeup();
+					}
+				});
+		this.dispatcher.start();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		this.dispatcher.stop();
+		this.engine.close();
+	}
+
+	@Benchmark
+	public void gameThread() {
+		tick();
+	}
+
+	@Benchmark
+	public long roundTrip() {
+		tick();
+		// Nothing is conflated because the previous tick was fully answered.
+		this.expected += this.events.length;
+		while (this.acknowledged.get() < this.expected) {
+			Thread.yield();
+		}
+		return this.expected;
+	}
+
+	private void tick() {
+		int value = ++this.value;
+		for (int i = 0; i < this.events.length; i++) {
+			this.events[i].setInt(value);
+			this.dispatcher.enqueue(this.events[i]);
+		}
+		this.dispatcher.flush();
+	}
+}
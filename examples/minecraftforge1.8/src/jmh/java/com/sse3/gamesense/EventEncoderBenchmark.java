@@ -0,0 +1,84 @@
+package com.sse3.gamesense;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Request body encoding. jsonObjectEvent builds the same body the way the mod used to
+// (a JSONObject per event, stringified), for comparison.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventEncoderBenchmark {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final String[] BATCH_EVENTS = { "HEALTH", "HUNGERLEVEL", "HUNGRY", "AIRLEVEL", "FACING", "TOOL",
+			"TOOLMATERIAL", "TOOLDURABILITY" };
+
+	private final EventEncoder encoder = new EventEncoder(GameSenseMod.GAME_NAME);
+	private GameEvent health;
+	private GameEvent facing;
+	private GameEvent[] batch;
+	private int value = 0;
+
+	@Setup
+	public void setup() {
+		EventRegistry registry = new EventRegistry();
+		this.health = registry.register("HEALTH", 0, 100, GameSenseMod.ICON_HEALTH);
+		this.facing = registry.register("FACING");
+		this.facing.setString("NORTH");
+		this.batch = new GameEvent[BATCH_EVENTS.length];
+		for (int i = 0; i < BATCH_EVENTS.length; i++) {
+			this.batch[i] = registry.register(BATCH_EVENTS[i]);
+			this.batch[i].setInt(i * 10);
+		}
+	}
+
+	@Benchmark
+	public int intEvent() {
+		this.health.setInt(this.value++ & 127);
+		this.encoder.encodeEvent(this.health);
+		return this.encoder.getLength();
+	}
+
+	@Benchmark
+	public int stringEvent() {
+		this.encoder.encodeEvent(this.facing);
+		return this.encoder.getLength();
+	}
+
+	@Benchmark
+	public int multipleEvents() {
+		this.encoder.beginEvents();
+		for (int i = 0; i < this.batch.length; i++) {
+			this.encoder.addEvent(this.batch[i]);
+		}
+		this.encoder.endEvents();
+		return this.encoder.getLength();
+	}
+
+	@Benchmark
+	public int jsonObjectEvent() {
+		JSONObject data = new JSONObject();
+		data.put("value", this.value++ & 127);
+		JSONObject event = new JSONObject();
+		event.put("game", GameSenseMod.GAME_NAME);
+		event.put("event", "HEALTH");
+		event.put("data", data);
+		return event.toString().getBytes(UTF_8).length;
+	}
+}
@@ -0,0 +1,155 @@
+package com.sse3.gamesense;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+
+// A stand-in for SteelSeries Engine on the loopback interface that answers every
+// request with an empty 200. It parses just enough HTTP/1.1 to find where each
+// (possibly pipelined) request ends, and reuses its buffers, so that its own work
+// stays small next to the mod's in the benchmark results.
+class LoopbackEngine {
+
+	private static final byte[] RESPONSE = "HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n".getBytes(Charset.forName("UTF-8"));
+	private static final byte[] CONTENT_LENGTH = "content-length:".getBytes(Charset.forName("UTF-8"));
+
+	private final ServerSocket server;
+	private volatile boolean running = true;
+
+	LoopbackEngine() throws IOException {
+		this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				acceptLoop();
+			}
+		}, "Loopback Engine");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	InetSocketAddress getAddress() {
+		return new InetSocketAddress(this.server.getInetAddress(), this.server.getLocalPort());
+	}
+
+	void close() throws IOException {
+		this.running = false;
+		this.server.close();
+	}
+
+	private void acceptLoop() {
+		while (this.running) {
+			final Socket socket;
+			try {
+				socket = this.server.accept();
+			} catch (IOException e) {
+				return;
+			}
+			Thread connection = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					serve(socket);
+				}
+			}, "Loopback Engine connection");
+			connection.setDaemon(true);
+			connection.start();
+		}
+	}
+
+	private void serve(Socket socket) {
+		byte[] in = new byte[64 * 1024];
+		byte[] out = new byte[RESPONSE.length * 256];
+		try {
+			socket.setTcpNoDelay(true);
+			InputStream input = socket.getInputStream();
+			OutputStream output = socket.getOutputStream();
+			int length = 0;
+			for (;;) {
+				int read = input.read(in, length, in.length - length);
+				if (read < 0) {
+					break;
+				}
+				length += read;
+
+				// Answer every complete request in the buffer with one write.
+				int start = 0;
+				int answered = 0;
+				int end;
+				while ((end = requestEnd(in, start, length)) >= 0) {
+					start = end;
+					answered++;
+				}
+				int outLength = 0;
+				for (int i = 0; i < answered; i++) {
+					if (outLength + RESPONSE.length > out.length) {
+						output.write(out, 0, outLength);
+						outLength = 0;
+					}
+					System.arraycopy(RESPONSE, 0, out, outLength, RESPONSE.length);
+					outLength += RESPONSE.length;
+				}
+				if (outLength > 0) {
+					output.write(out, 0, outLength);
+					output.flush();
+				}
+				System.arraycopy(in, start, in, 0, length - start);
+				length -= start;
+			}
+		} catch (IOException e) {
+			// Connection closed by the client.
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	// The offset just past the request starting at start, or -1 if it isn't complete yet.
+	private static int requestEnd(byte[] buf, int start, int length) {
+		int contentLength = 0;
+		int lineStart = start;
+		for (int i = start; i + 1 < length; i++) {
+			if (buf[i] != '\r' || buf[i + 1] != '\n') {
+				continue;
+			}
+			if (i == lineStart) {
+				// Blank line: end of the headers.
+				int end = i + 2 + contentLength;
+				return end <= length ? end : -1;
+			}
+			if (startsWithIgnoreCase(buf, lineStart, i, CONTENT_LENGTH)) {
+				contentLength = 0;
+				for (int j = lineStart + CONTENT_LENGTH.length; j < i; j++) {
+					if (buf[j] >= '0' && buf[j] <= '9') {
+						contentLength = contentLength * 10 + (buf[j] - '0');
+					}
+				}
+			}
+			lineStart = i + 2;
+			i++;
+		}
+		return -1;
+	}
+
+	private static boolean startsWithIgnoreCase(byte[] buf, int from, int to, byte[] prefix) {
+		if (to - from < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			int b = buf[from + i];
+			if (b >= 'A' && b <= 'Z') {
+				b += 'a' - 'A';
+			}
+			if (b != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
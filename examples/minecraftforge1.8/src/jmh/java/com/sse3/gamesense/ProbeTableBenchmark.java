@@ -0,0 +1,106 @@
+package com.sse3.gamesense;
+
+import java.util.concurrent.TimeUnit;
+
+import net.minecraft.entity.player.EntityPlayer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// One sampling pass of a ProbeTable, including handing the changed values through
+// the event profile and throttle to the conflating buffer the way GameSenseMod does,
+// and the throttle release of the flush that follows.
+//
+// A real EntityPlayer can't be created without a running client, so the probes
+// sample a mock player instead: plain fields shaped like the state the mod tracks.
+// changedProbes of them change on every pass. PROBE0 has a limit like AIRLEVEL's
+// default. The mod is never initialized, so its event profile is the empty one with
+// every event on.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProbeTableBenchmark {
+
+	private static final int PROBES = 8;
+
+	private static class MockPlayer {
+		final int[] state = new int[PROBES];
+	}
+
+	@Param({ "0", "1", "8" })
+	public int changedProbes;
+
+	private final MockPlayer player = new MockPlayer();
+	private final ProbeTable table = new ProbeTable();
+	private final GameSenseMod mod = new GameSenseMod();
+	private ConflatingBuffer buffer;
+	private final EventProfile profile = EventProfile.EMPTY;
+	private final EventThrottle throttle = new EventThrottle(this.profile.limitSpecs(new String[] { "PROBE0=4,5" }), 500);
+	private final EventThrottle.Sink sink = new EventThrottle.Sink() {
+		@Override
+		public void queue(GameEvent event) {
+			ProbeTableBenchmark.this.buffer.put(event);
+		}
+	};
+	private int tick = 0;
+
+	@Setup
+	public void setup() {
+		EventRegistry registry = this.mod.getRegistry();
+		this.buffer = new ConflatingBuffer(registry, 256, OverflowPolicy.DROP_OLDEST, 2000000000L, new GameSenseMetrics());
+		for (int i = 0; i < PROBES; i++) {
+			final int slot = i;
+			final GameEvent event = registry.register("PROBE" + i, 0, 100, GameSenseMod.ICON_NONE);
+			this.table.add(new PlayerProbe(event.getHandle()) {
+				@Override
+				public long sample(EntityPlayer ignored) {
+					return ProbeTableBenchmark.this.player.state[slot];
+				}
+
+				@Override
+				public void send(GameSenseMod mod, EntityPlayer ignored, long value) {
+					// GameSenseMod.sendInt without the parts that need a running mod.
+					if (ProbeTableBenchmark.this.profile.isEnabled(event)) {
+						event.setInt((int) value);
+						if (ProbeTableBenchmark.this.throttle.admitInt(event, (int) value)) {
+							ProbeTableBenchmark.this.buffer.put(event);
+						}
+					}
+				}
+			});
+		}
+		// The first pass sends everything.
+		this.table.update(this.mod, null);
+		drain();
+	}
+
+	@Benchmark
+	public int samplePass() {
+		int tick = ++this.tick;
+		for (int i = 0; i < this.changedProbes; i++) {
+			this.player.state[i] = tick;
+		}
+		int sent = this.table.update(this.mod, null);
+		this.throttle.release(System.nanoTime(), this.sink);
+		// The sender thread's side, so the buffer starts empty every pass.
+		drain();
+		return sent;
+	}
+
+	private void drain() {
+		while (this.buffer.poll() != null) {
+		}
+	}
+}
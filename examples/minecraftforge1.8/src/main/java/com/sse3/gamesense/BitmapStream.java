@@ -0,0 +1,87 @@
+package com.sse3.gamesense;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+// Streams an OledBitmap to OLED screens through an event's frame, at most maxFps
+// times a second and only when the picture changed. Use from one thread:
+//
+//   if (stream.isDue(now)) {
+//       draw into stream.getBitmap()
+//       stream.send(now);
+//   }
+//
+// Checking isDue first means frames over the cap aren't even drawn. Identical frames
+// are found by EventFrame from the bitmap's content hash, and then no request is made.
+public class BitmapStream {
+
+	private final GameSenseMod mod;
+	private final int handle;
+	private final OledBitmap bitmap;
+	private final long frameIntervalNanos;
+	private long nextFrameNanos;
+	private boolean forceSend = true;
+
+	// Binds the event to a screen handler for the bitmap's resolution that shows
+	// whatever image is sent in the frame.
+	public BitmapStream(GameSenseMod mod, String eventName, int width, int height, int maxFps) {
+		this.mod = mod;
+		this.bitmap = new OledBitmap(width, height);
+		this.frameIntervalNanos = 1000000000L / Math.max(1, maxFps);
+		this.nextFrameNanos = System.nanoTime();
+		this.handle = mod.BindGameEvent(eventName, 0, 1, GameSenseMod.ICON_NONE, screenHandlers(this.bitmap));
+		// The value is always 1; only the image in the frame changes.
+		mod.SetValueOptional(this.handle, true);
+	}
+
+	public OledBitmap getBitmap() {
+		return this.bitmap;
+	}
+
+	// Never while the event profile has the event turned off, so nothing is drawn.
+	public boolean isDue(long nowNanos) {
+		if (!this.mod.IsEventEnabled(this.handle)) {
+			// Turned back on, the current picture goes out even if it didn't change.
+			this.forceSend = true;
+			return false;
+		}
+		return nowNanos - this.nextFrameNanos >= 0;
+	}
+
+	// Sends the bitmap if it differs from the last frame sent. Returns whether it did.
+	public boolean send(long nowNanos) {
+		this.nextFrameNanos = nowNanos + this.frameIntervalNanos;
+		this.mod.GetFrame(this.handle).put(this.bitmap);
+		boolean sent = this.mod.SendFrame(this.handle, 1);
+		if (!sent && this.forceSend) {
+			this.mod.SendGameEvent(this.handle, 1);
+			sent = true;
+		}
+		this.forceSend = false;
+		return sent;
+	}
+
+	// Lets the next send() go out even if the picture is the same, e.g. in a new world.
+	public void reset() {
+		this.nextFrameNanos = System.nanoTime();
+		this.forceSend = true;
+	}
+
+	// A screen handler for screened-WIDTHxHEIGHT devices with a blank default image,
+	// which Engine replaces with the image-data-WIDTHxHEIGHT frame key of every event.
+	private static JSONArray screenHandlers(OledBitmap bitmap) {
+		JSONArray blank = new JSONArray();
+		for (int i = 0; i < bitmap.pixels.length; i++) {
+			blank.put(0);
+		}
+		JSONObject data = new JSONObject();
+		data.put("has-text", false);
+		data.put("image-data", blank);
+		JSONObject handler = new JSONObject();
+		handler.put("device-type", "screened-" + bitmap.width + "x" + bitmap.height);
+		handler.put("zone", "one");
+		handler.put("mode", "screen");
+		handler.put("datas", new JSONArray().put(data));
+		return new JSONArray().put(handler);
+	}
+}
@@ -0,0 +1,109 @@
+package com.sse3.gamesense;
+
+import java.util.Random;
+
+// Tracks whether SteelSeries Engine is worth talking to.
+//
+// CLOSED:    requests flow normally. failureThreshold failures in a row open it.
+// OPEN:      nothing is sent and game events aren't even queued. Once the backoff
+//            expires it moves to HALF_OPEN.
+// HALF_OPEN: a single cheap probe (a heartbeat) is in flight. Success closes the
+//            circuit, failure opens it again with twice the backoff.
+//
+// The backoff grows exponentially from baseBackoffMillis up to maxBackoffMillis, with
+// random jitter so that several clients don't retry in lock step.
+//
+// isClosed() may be called from any thread; everything else from the sender thread.
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final int failureThreshold;
+	private final long baseBackoffNanos;
+	private final long maxBackoffNanos;
+	private final Random random = new Random();
+
+	private volatile State state = State.CLOSED;
+	private int consecutiveFailures = 0;
+	// Number of times the circuit has opened since it was last closed.
+	private int openings = 0;
+	private long retryAtNanos = 0;
+
+	public CircuitBreaker(int failureThreshold, int baseBackoffMillis, int maxBackoffMillis) {
+		this.failureThreshold = Math.max(1, failureThreshold);
+		this.baseBackoffNanos = baseBackoffMillis * 1000000L;
+		this.maxBackoffNanos = Math.max(this.baseBackoffNanos, maxBackoffMillis * 1000000L);
+	}
+
+	public State getState() {
+		return this.state;
+	}
+
+	public boolean isClosed() {
+		return this.state == State.CLOSED;
+	}
+
+	// Returns true if this closed the circuit.
+	public boolean onSuccess() {
+		this.consecutiveFailures = 0;
+		if (this.state == State.CLOSED) {
+			return false;
+		}
+		this.state = State.CLOSED;
+		this.openings = 0;
+		return true;
+	}
+
+	// Returns true if this opened the circuit from CLOSED, i.e. an outage just started.
+	public boolean onFailure(long nowNanos) {
+		switch (this.state) {
+			case CLOSED:
+				if (++this.consecutiveFailures < this.failureThreshold) {
+					return false;
+				}
+				open(nowNanos);
+				return true;
+			case HALF_OPEN:
+				// The probe failed, back off further.
+				open(nowNanos);
+				return false;
+			default:
+				// Requests that were already in flight when the circuit opened.
+				return false;
+		}
+	}
+
+	// Moves OPEN to HALF_OPEN once the backoff has expired. The caller must then send
+	// exactly one probe and report its outcome.
+	public boolean tryProbe(long nowNanos) {
+		if (this.state != State.OPEN || nowNanos - this.retryAtNanos < 0) {
+			return false;
+		}
+		this.state = State.HALF_OPEN;
+		return true;
+	}
+
+	// Makes an open circuit's probe due right away, e.g. because Engine moved.
+	public void probeNow(long nowNanos) {
+		if (this.state == State.OPEN) {
+			this.retryAtNanos = nowNanos;
+		}
+	}
+
+	private void open(long nowNanos) {
+		long backoff = this.baseBackoffNanos << Math.min(this.openings, 20);
+		if (backoff <= 0 || backoff > this.maxBackoffNanos) {
+			backoff = this.maxBackoffNanos;
+		}
+		// Equal jitter: somewhere between half and all of the backoff.
+		long half = backoff / 2;
+		backoff = half + (long) (this.random.nextDouble() * (backoff - half));
+
+		this.openings++;
+		this.consecutiveFailures = 0;
+		this.retryAtNanos = nowNanos + backoff;
+		this.state = State.OPEN;
+	}
+}
@@ -0,0 +1,131 @@
+package com.sse3.gamesense;
+
+// Holds at most one pending update per event. Sending an event that is already
+// waiting just overwrites the value inside its GameEvent, so the consumer always
+// sees the newest state and the backlog can never grow past the number of distinct
+// events.
+//
+// Events with a pending update sit in a bounded EventQueue in the order they first
+// became pending. An event goes into the queue exactly when its pending flag changes
+// from false to true, and the consumer (or an eviction) clears the flag when it
+// takes the event back out, so no lock is needed on either side.
+//
+// There is one queue per DispatchPriority. poll() empties the CRITICAL lane before
+// it looks at TELEMETRY, and a full TELEMETRY lane never evicts a critical event.
+// Every put() of a critical event gives it a deadline; past it, the event is dropped
+// instead of being sent late. Retries and resyncs keep the deadline.
+public class ConflatingBuffer {
+
+	private final EventRegistry events;
+	private final EventQueue<GameEvent> critical;
+	private final EventQueue<GameEvent> telemetry;
+	private final OverflowPolicy overflowPolicy;
+	private final long criticalDeadlineNanos;
+	private final GameSenseMetrics metrics;
+
+	public ConflatingBuffer(EventRegistry events, int capacity, OverflowPolicy overflowPolicy, long criticalDeadlineNanos,
+			GameSenseMetrics metrics) {
+		this.events = events;
+		this.metrics = metrics;
+		this.critical = new EventQueue<GameEvent>(capacity);
+		this.telemetry = new EventQueue<GameEvent>(capacity);
+		this.overflowPolicy = overflowPolicy;
+		this.criticalDeadlineNanos = criticalDeadlineNanos;
+	}
+
+	// Call after setting a new value on the event. Never blocks. Returns false if the
+	// update was discarded because the buffer was full and the overflow policy is
+	// DROP_NEWEST.
+	public boolean put(GameEvent event) {
+		if (event.isCritical()) {
+			event.deadlineNanos = System.nanoTime() + this.criticalDeadlineNanos;
+		}
+		return offer(event, laneOf(event));
+	}
+
+	// Puts an event whose send failed back in its lane, keeping its deadline.
+	public boolean retry(GameEvent event) {
+		return offer(event, laneOf(event));
+	}
+
+	private EventQueue<GameEvent> laneOf(GameEvent event) {
+		return event.isCritical() ? this.critical : this.telemetry;
+	}
+
+	private boolean offer(GameEvent event, EventQueue<GameEvent> lane) {
+		if (!event.pending.compareAndSet(false, true)) {
+			// Already queued, the consumer will pick up the new value.
+			this.metrics.coalesced(event);
+			return true;
+		}
+
+		while (!lane.offer(event)) {
+			if (this.overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+				event.pending.set(false);
+				this.metrics.dropped(event);
+				return false;
+			}
+			// DROP_OLDEST: evict the longest waiting event and try again.
+			GameEvent evicted = lane.poll();
+			if (evicted != null) {
+				evicted.pending.set(false);
+				this.metrics.dropped(evicted);
+			}
+		}
+		this.metrics.enqueued(event);
+		return true;
+	}
+
+	// Returns the longest waiting critical event, else the longest waiting other one,
+	// or null if nothing is pending. Its value should be read after this returns; an
+	// update that lands later queues it again.
+	public GameEvent poll() {
+		GameEvent event;
+		while ((event = this.critical.poll()) != null) {
+			event.pending.set(false);
+			if (System.nanoTime() - event.deadlineNanos < 0) {
+				return event;
+			}
+			expired(event);
+		}
+		event = this.telemetry.poll();
+		if (event != null) {
+			event.pending.set(false);
+		}
+		return event;
+	}
+
+	private void expired(GameEvent event) {
+		event.attempts = 0;
+		this.metrics.dropped(event);
+		System.out.println("Gave up sending " + event.getName() + " to SteelSeries Engine, its deadline passed");
+	}
+
+	// Puts every event that has a value back in the queue, e.g. to resend the full
+	// state after updates were lost. Not meant for the per-tick path.
+	//
+	// One-off events (see GameEvent.isResync) are left out: a FINISH sent long ago
+	// would tell Engine the game ended. Deadlines are kept as for retry(), but a
+	// critical event past its own is still the current state, so it goes in the
+	// TELEMETRY lane instead of being dropped.
+	public void requeueAll() {
+		long now = System.nanoTime();
+		for (int i = 0, n = this.events.size(); i < n; i++) {
+			GameEvent event = this.events.get(i);
+			if (!event.hasValue() || !event.isResync()) {
+				continue;
+			}
+			boolean urgent = event.isCritical() && now - event.deadlineNanos < 0;
+			offer(event, urgent ? this.critical : this.telemetry);
+		}
+	}
+
+	public boolean isEmpty() {
+		return this.critical.isEmpty() && this.telemetry.isEmpty();
+	}
+
+	// Number of events with a pending update.
+	public int size() {
+		return this.critical.size() + this.telemetry.size();
+	}
+}
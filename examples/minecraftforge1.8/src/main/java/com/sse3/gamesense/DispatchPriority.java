@@ -0,0 +1,12 @@
+package com.sse3.gamesense;
+
+// Which lane of the ConflatingBuffer an event waits in, see GameSenseMod.SetEventPriority.
+public enum DispatchPriority {
+	// Lifecycle and other events that must get through: sent ahead of all telemetry,
+	// held even while Engine is unreachable, and retried a bounded number of times
+	// until their deadline.
+	CRITICAL,
+	// Periodic state, sent best effort: shed while Engine is unreachable or the queue is
+	// full, with the latest value going out again with the resync once Engine is back.
+	TELEMETRY
+}
@@ -0,0 +1,153 @@
+package com.sse3.gamesense;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Finds out where SteelSeries Engine listens. Engine writes its address to
+// coreProps.json when it starts, and may pick a different port every time, so after
+// the initial resolve() the file is polled (by modification time and size, which is
+// cheap) and a changed address is reported by poll().
+//
+// An address override skips coreProps.json entirely, e.g. for a remote machine or a
+// local stub.
+public class EngineDiscovery {
+	public static final String DEFAULT_ADDRESS = "localhost:3000";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final String overrideAddress;
+	private final File[] candidates;
+	private final long pollIntervalNanos;
+
+	private long nextPollNanos = 0;
+	private File foundFile = null;
+	private long foundModified = 0;
+	private long foundLength = 0;
+	private String address = null;
+
+	// corePropsPath and overrideAddress may be empty to use the platform defaults.
+	// pollIntervalMillis of 0 turns off watching.
+	public EngineDiscovery(String corePropsPath, String overrideAddress, int pollIntervalMillis) {
+		this.overrideAddress = overrideAddress == null ? "" : overrideAddress.trim();
+		if (corePropsPath != null && corePropsPath.trim().length() > 0) {
+			this.candidates = new File[] { new File(corePropsPath.trim()) };
+		} else {
+			String programData = System.getenv("PROGRAMDATA");
+			this.candidates = new File[] {
+					// Windows
+					new File(programData == null ? "C:\\ProgramData" : programData, "SteelSeries\\SteelSeries Engine 3\\coreProps.json"),
+					// Mac
+					new File("/Library/Application Support/SteelSeries Engine 3/coreProps.json") };
+		}
+		this.pollIntervalNanos = pollIntervalMillis * 1000000L;
+	}
+
+	// The address as "host:port", once resolved.
+	public String getAddress() {
+		return this.address;
+	}
+
+	// Reads the current address, falling back to DEFAULT_ADDRESS if there is none.
+	public InetSocketAddress resolve() {
+		this.address = null;
+		if (this.overrideAddress.length() > 0) {
+			this.address = this.overrideAddress;
+		} else {
+			checkFile();
+			if (this.address == null) {
+				System.out.println("coreProps.json not found, using " + DEFAULT_ADDRESS);
+				this.address = DEFAULT_ADDRESS;
+			}
+		}
+		return toSocketAddress(this.address);
+	}
+
+	// Returns the new address if coreProps.json now names a different one, otherwise null.
+	// Only looks at the file every pollInterval.
+	public InetSocketAddress poll(long nowNanos) {
+		if (this.pollIntervalNanos <= 0 || this.overrideAddress.length() > 0 || nowNanos - this.nextPollNanos < 0) {
+			return null;
+		}
+		this.nextPollNanos = nowNanos + this.pollIntervalNanos;
+
+		String previous = this.address;
+		if (!checkFile() || this.address == null || this.address.equals(previous)) {
+			return null;
+		}
+		InetSocketAddress moved = toSocketAddress(this.address);
+		if (moved == null) {
+			// Keep talking to the old address rather than to nothing.
+			this.address = previous;
+		}
+		return moved;
+	}
+
+	// Re-reads coreProps.json if it appeared or changed since the last look. Returns
+	// false if there was nothing new to read; a vanished file keeps the last address.
+	private boolean checkFile() {
+		for (File file : this.candidates) {
+			long modified = file.lastModified();
+			if (modified == 0) {
+				continue;
+			}
+			long length = file.length();
+			if (file.equals(this.foundFile) && modified == this.foundModified && length == this.foundLength) {
+				return false;
+			}
+			this.foundFile = file;
+			this.foundModified = modified;
+			this.foundLength = length;
+
+			String read = readAddress(file);
+			if (read == null) {
+				// Probably caught mid-write; the finished file will look different again.
+				return false;
+			}
+			this.address = read;
+			return true;
+		}
+		return false;
+	}
+
+	private static String readAddress(File file) {
+		try {
+			InputStream in = new FileInputStream(file);
+			try {
+				byte[] contents = new byte[(int) Math.min(file.length(), 65536)];
+				int length = 0;
+				int read;
+				while (length < contents.length && (read = in.read(contents, length, contents.length - length)) > 0) {
+					length += read;
+				}
+				String json = new String(contents, 0, length, UTF_8);
+				System.out.println("Opened coreProps.json and read: " + json);
+				return new JSONObject(json).getString("address");
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			System.out.println("Couldn't read " + file + ": " + e);
+		} catch (JSONException e) {
+			System.out.println("Something terrible happened creating JSONObject from coreProps.json: " + e.getMessage());
+		}
+		return null;
+	}
+
+	// "host:port"
+	private static InetSocketAddress toSocketAddress(String address) {
+		try {
+			int colon = address.lastIndexOf(':');
+			return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+		} catch (RuntimeException e) {
+			System.out.println("Something terrible happened parsing the SteelSeries Engine address: " + address);
+			return null;
+		}
+	}
+}
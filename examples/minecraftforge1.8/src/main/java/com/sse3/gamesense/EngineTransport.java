@@ -0,0 +1,51 @@
+package com.sse3.gamesense;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+// Carries request bodies to SteelSeries Engine. Implementations are driven entirely
+// by the sender thread: post() queues a request without waiting for the answer, and
+// responses are delivered to the Listener from inside poll() in the order the
+// requests were posted.
+public interface EngineTransport {
+
+	interface Listener {
+		void onResponse(int tag, int status, long roundTripNanos);
+
+		// The request was lost: the connection failed or Engine didn't answer in time.
+		void onFailure(int tag);
+
+		void onConnected(InetSocketAddress address);
+
+		void onConnectFailed(IOException cause);
+	}
+
+	void setListener(Listener listener);
+
+	// May be called from any thread. Requests already sent to the old address still
+	// complete or fail; new ones go to the new address.
+	void setAddress(InetSocketAddress address);
+
+	InetSocketAddress getAddress();
+
+	// Whether post() can accept a request right now.
+	boolean isReady();
+
+	// POSTs body[0..length) to path, connecting first if needed. Returns false if the
+	// request could not be queued (onConnectFailed has been called if connecting was the
+	// problem); otherwise exactly one of onResponse or onFailure will later be called
+	// with tag.
+	boolean post(String path, byte[] body, int length, int tag);
+
+	// Writes pending data and handles responses, waiting at most timeoutNanos for
+	// something to happen. Returns early when wakeup() is called.
+	void poll(long timeoutNanos);
+
+	// Polls until every posted request has been answered, or the timeout expires.
+	void awaitResponses(long timeoutNanos);
+
+	// May be called from any thread.
+	void wakeup();
+
+	void close();
+}
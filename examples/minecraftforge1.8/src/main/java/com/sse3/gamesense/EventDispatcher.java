@@ -0,0 +1,136 @@
+package com.sse3.gamesense;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Moves game events off the client thread. enqueue() is wait-free apart from the
+// queue CAS, and a single daemon sender thread drains the queue and does all the
+// network work against SteelSeries Engine.
+//
+// Events are conflated per name: while an event is waiting, a newer value for it
+// replaces the old one instead of queueing behind it.
+//
+// Producers enqueue a tick's worth of events and then call flush(), which wakes the
+// sender to drain everything queued so far as one batch. CRITICAL events lead every
+// batch they are waiting for (see ConflatingBuffer).
+public class EventDispatcher {
+
+	public interface Sender {
+		// The batch list is reused by the dispatcher and must not be kept.
+		void send(List<GameEvent> batch);
+
+		// Whether send() can take a batch now. Events stay conflated in the buffer meanwhile.
+		boolean isReady();
+
+		// Background work (reading responses etc.), waiting at most timeoutNanos for
+		// something to happen or for wakeup().
+		void service(long timeoutNanos);
+
+		// May be called from any thread.
+		void wakeup();
+	}
+
+	// Upper bound on how long an event waits when nobody calls flush().
+	private static final long IDLE_WAIT_NANOS = 50000000L;
+
+	private final ConflatingBuffer buffer;
+	private final Sender sender;
+	private final int maxBatchSize;
+	private final List<GameEvent> batch;
+	private final Thread senderThread;
+	private volatile boolean running = false;
+	private volatile boolean senderParked = false;
+
+	public EventDispatcher(EventRegistry events, int capacity, OverflowPolicy overflowPolicy, long criticalDeadlineNanos,
+			int maxBatchSize, GameSenseMetrics metrics, Sender sender) {
+		this.buffer = new ConflatingBuffer(events, capacity, overflowPolicy, criticalDeadlineNanos, metrics);
+		this.sender = sender;
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+		this.batch = new ArrayList<GameEvent>(this.maxBatchSize);
+		this.senderThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drainLoop();
+			}
+		}, "GameSense Sender");
+		this.senderThread.setDaemon(true);
+	}
+
+	public void start() {
+		this.running = true;
+		this.senderThread.start();
+	}
+
+	public void stop() {
+		this.running = false;
+		this.sender.wakeup();
+	}
+
+	// Call after setting a new value on the event. Never blocks. Returns false if the
+	// update was discarded because the queue was full and the overflow policy is
+	// DROP_NEWEST.
+	public boolean enqueue(GameEvent event) {
+		return this.buffer.put(event);
+	}
+
+	// For the sender: queues an event it couldn't send again without moving its deadline.
+	public boolean retry(GameEvent event) {
+		return this.buffer.retry(event);
+	}
+
+	// Wakes the sender so that everything enqueued so far goes out together.
+	public void flush() {
+		if (this.senderParked) {
+			this.sender.wakeup();
+		}
+	}
+
+	// Queues every event that has a value again, e.g. after updates were lost.
+	public void requeueAll() {
+		this.buffer.requeueAll();
+	}
+
+	public int getQueueDepth() {
+		return this.buffer.size();
+	}
+
+	private void drainLoop() {
+		while (this.running) {
+			GameEvent event = this.sender.isReady() ? this.buffer.poll() : null;
+			if (event == null) {
+				// Publish that we are about to sleep before the final emptiness check, so a
+				// producer that flushes in between is guaranteed to see the flag and wake us.
+				// A wakeup that arrives before the wait starts makes the wait return at once.
+				this.senderParked = true;
+				if (this.running && (this.buffer.isEmpty() || !this.sender.isReady())) {
+					// Either nothing to send, or events are waiting while the sender
+					// recovers; either way don't spin.
+					serviceSender(IDLE_WAIT_NANOS);
+				}
+				this.senderParked = false;
+				continue;
+			}
+			this.batch.clear();
+			this.batch.add(event);
+			while (this.batch.size() < this.maxBatchSize && (event = this.buffer.poll()) != null) {
+				this.batch.add(event);
+			}
+			try {
+				this.sender.send(this.batch);
+			} catch (RuntimeException e) {
+				// Never let a bad event kill the sender thread.
+				e.printStackTrace();
+			}
+			// Pick up any responses that already arrived.
+			serviceSender(0);
+		}
+	}
+
+	private void serviceSender(long timeoutNanos) {
+		try {
+			this.sender.service(timeoutNanos);
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,321 @@
+package com.sse3.gamesense;
+
+import java.nio.charset.Charset;
+
+import org.json.JSONObject;
+
+// Writes GameSense request bodies straight into a reused byte array. The game name
+// and every event name are encoded once up front, and values are written as JSON
+// primitives, so encoding an event produces no garbage (except for events sent as a
+// caller supplied JSONObject).
+//
+// Not thread safe; the sender thread owns one instance.
+public final class EventEncoder {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final byte[] VALUE_PREFIX = "{\"value\":".getBytes(UTF_8);
+	private static final byte[] EVENTS_PREFIX = "\"events\":[".getBytes(UTF_8);
+	private static final byte[] EVENT_KEY = ",\"event\":".getBytes(UTF_8);
+	private static final byte[] MIN_VALUE_KEY = ",\"min_value\":".getBytes(UTF_8);
+	private static final byte[] MAX_VALUE_KEY = ",\"max_value\":".getBytes(UTF_8);
+	private static final byte[] ICON_ID_KEY = ",\"icon_id\":".getBytes(UTF_8);
+	private static final byte[] VALUE_OPTIONAL = ",\"value_optional\":true".getBytes(UTF_8);
+	private static final byte[] HANDLERS_KEY = ",\"handlers\":".getBytes(UTF_8);
+	private static final byte[] FRAME_KEY = ",\"frame\":".getBytes(UTF_8);
+	private static final byte[] TRUE = "true".getBytes(UTF_8);
+	private static final byte[] FALSE = "false".getBytes(UTF_8);
+	private static final byte[] NULL = "null".getBytes(UTF_8);
+	private static final byte[] HEX = "0123456789abcdef".getBytes(UTF_8);
+	// "0" to "255", for image data.
+	private static final byte[][] DECIMAL = new byte[256][];
+	static {
+		for (int i = 0; i < DECIMAL.length; i++) {
+			DECIMAL[i] = Integer.toString(i).getBytes(UTF_8);
+		}
+	}
+
+	// {"game":"<game>"
+	private final byte[] gamePrefix;
+	private byte[] buffer = new byte[1024];
+	private int length = 0;
+	private boolean firstEvent = true;
+
+	public EventEncoder(String gameName) {
+		this.gamePrefix = ("{\"game\":" + JSONObject.quote(gameName)).getBytes(UTF_8);
+	}
+
+	public byte[] getBuffer() {
+		return this.buffer;
+	}
+
+	public int getLength() {
+		return this.length;
+	}
+
+	// {"game":"<game>"} as used by /game_heartbeat and /supports_multiple_game_events.
+	public void encodeGame() {
+		this.length = 0;
+		writeBytes(this.gamePrefix);
+		writeByte('}');
+	}
+
+	// {"game":"<game>","event":"<name>","data":{...}} for /game_event.
+	public void encodeEvent(GameEvent event) {
+		this.length = 0;
+		writeBytes(this.gamePrefix);
+		writeByte(',');
+		writeBytes(event.encodedName);
+		event.encodeData(this);
+		writeByte('}');
+	}
+
+	// The same, with data[0..dataLength) as the already encoded "data" object.
+	public void encodeEvent(GameEvent event, byte[] data, int dataLength) {
+		this.length = 0;
+		writeBytes(this.gamePrefix);
+		writeByte(',');
+		writeBytes(event.encodedName);
+		ensureCapacity(dataLength);
+		System.arraycopy(data, 0, this.buffer, this.length, dataLength);
+		this.length += dataLength;
+		writeByte('}');
+	}
+
+	// Only the event's "data" object, as encodeEvent would write it.
+	public void encodeData(GameEvent event) {
+		this.length = 0;
+		event.encodeData(this);
+	}
+
+	// {"game":"<game>","event":"<name>","min_value":<min>,"max_value":<max>,"icon_id":<icon>}
+	// for /register_game_event.
+	public void encodeRegistration(GameEvent event) {
+		this.length = 0;
+		writeBytes(this.gamePrefix);
+		writeBytes(EVENT_KEY);
+		writeString(event.name);
+		writeBytes(MIN_VALUE_KEY);
+		writeInt(event.getMinValue());
+		writeBytes(MAX_VALUE_KEY);
+		writeInt(event.getMaxValue());
+		writeBytes(ICON_ID_KEY);
+		writeInt(event.getIconId());
+		if (event.isValueOptional()) {
+			writeBytes(VALUE_OPTIONAL);
+		}
+		writeByte('}');
+	}
+
+	// The same plus ,"handlers":[...] for /bind_game_event.
+	public void encodeBinding(GameEvent event) {
+		encodeRegistration(event);
+		// Reopen the object.
+		this.length--;
+		writeBytes(HANDLERS_KEY);
+		writeRaw(event.getHandlers());
+		writeByte('}');
+	}
+
+	// {"game":"<game>","events":[{"event":"<name>","data":{...}},...]} for
+	// /multiple_game_events, built with beginEvents, addEvent and endEvents.
+	public void beginEvents() {
+		this.length = 0;
+		this.firstEvent = true;
+		writeBytes(this.gamePrefix);
+		writeByte(',');
+		writeBytes(EVENTS_PREFIX);
+	}
+
+	public void addEvent(GameEvent event) {
+		if (!this.firstEvent) {
+			writeByte(',');
+		}
+		this.firstEvent = false;
+		writeByte('{');
+		writeBytes(event.encodedName);
+		event.encodeData(this);
+		writeByte('}');
+	}
+
+	public void endEvents() {
+		writeByte(']');
+		writeByte('}');
+	}
+
+	// frame may be null.
+	void writeData(int type, int intValue, Object objectValue, EventFrame frame) {
+		if (type == GameEvent.TYPE_DATA) {
+			// Nested as an object, not as a string holding an object.
+			writeRaw(objectValue.toString());
+			return;
+		}
+		writeBytes(VALUE_PREFIX);
+		switch (type) {
+			case GameEvent.TYPE_INT:
+				writeInt(intValue);
+				break;
+			case GameEvent.TYPE_BOOLEAN:
+				writeBoolean(intValue != 0);
+				break;
+			case GameEvent.TYPE_STRING:
+				writeString((String) objectValue);
+				break;
+			default:
+				writeBytes(NULL);
+				break;
+		}
+		if (frame != null && !frame.isEmpty()) {
+			writeBytes(FRAME_KEY);
+			frame.encode(this);
+		}
+		writeByte('}');
+	}
+
+	void writeBoolean(boolean value) {
+		writeBytes(value ? TRUE : FALSE);
+	}
+
+	void writeInt(int value) {
+		ensureCapacity(11);
+		if (value == Integer.MIN_VALUE) {
+			writeRaw("-2147483648");
+			return;
+		}
+		if (value < 0) {
+			this.buffer[this.length++] = '-';
+			value = -value;
+		}
+		int digits = 1;
+		for (int i = value; i >= 10; i /= 10) {
+			digits++;
+		}
+		int pos = this.length + digits;
+		this.length = pos;
+		do {
+			this.buffer[--pos] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+	}
+
+	// [b,b,...] with every byte as a number from 0 to 255.
+	void writeUnsignedBytes(byte[] bytes) {
+		ensureCapacity(bytes.length * 4 + 2);
+		byte[] buf = this.buffer;
+		int pos = this.length;
+		buf[pos++] = '[';
+		for (int i = 0; i < bytes.length; i++) {
+			if (i > 0) {
+				buf[pos++] = ',';
+			}
+			byte[] digits = DECIMAL[bytes[i] & 0xff];
+			for (int d = 0; d < digits.length; d++) {
+				buf[pos++] = digits[d];
+			}
+		}
+		buf[pos++] = ']';
+		this.length = pos;
+	}
+
+	// [[r,g,b],[r,g,b],...] for packed 0xRRGGBB colours, as bitmap handlers take them.
+	void writeRgbColors(int[] colors) {
+		ensureCapacity(colors.length * 14 + 2);
+		byte[] buf = this.buffer;
+		int pos = this.length;
+		buf[pos++] = '[';
+		for (int i = 0; i < colors.length; i++) {
+			if (i > 0) {
+				buf[pos++] = ',';
+			}
+			int rgb = colors[i];
+			buf[pos++] = '[';
+			pos = writeDecimal(buf, pos, rgb >>> 16 & 0xff);
+			buf[pos++] = ',';
+			pos = writeDecimal(buf, pos, rgb >>> 8 & 0xff);
+			buf[pos++] = ',';
+			pos = writeDecimal(buf, pos, rgb & 0xff);
+			buf[pos++] = ']';
+		}
+		buf[pos++] = ']';
+		this.length = pos;
+	}
+
+	private static int writeDecimal(byte[] buf, int pos, int value) {
+		byte[] digits = DECIMAL[value];
+		for (int d = 0; d < digits.length; d++) {
+			buf[pos++] = digits[d];
+		}
+		return pos;
+	}
+
+	void writeString(String value) {
+		if (value == null) {
+			writeBytes(NULL);
+			return;
+		}
+		int count = value.length();
+		// Worst case is a \\u00XX escape for every char.
+		ensureCapacity(count * 6 + 2);
+		byte[] buf = this.buffer;
+		int pos = this.length;
+		buf[pos++] = '"';
+		for (int i = 0; i < count; i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				buf[pos++] = '\\';
+				buf[pos++] = (byte) c;
+			} else if (c < 0x20) {
+				buf[pos++] = '\\';
+				buf[pos++] = 'u';
+				buf[pos++] = '0';
+				buf[pos++] = '0';
+				buf[pos++] = HEX[c >> 4];
+				buf[pos++] = HEX[c & 0xF];
+			} else if (c < 0x80) {
+				buf[pos++] = (byte) c;
+			} else if (c < 0x800) {
+				buf[pos++] = (byte) (0xC0 | (c >> 6));
+				buf[pos++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(value.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, value.charAt(++i));
+				buf[pos++] = (byte) (0xF0 | (cp >> 18));
+				buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				// Unpaired surrogate, not representable in UTF-8.
+				buf[pos++] = '?';
+			} else {
+				buf[pos++] = (byte) (0xE0 | (c >> 12));
+				buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				buf[pos++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		buf[pos++] = '"';
+		this.length = pos;
+	}
+
+	// Copies text that is already valid JSON.
+	void writeRaw(String json) {
+		writeBytes(json.getBytes(UTF_8));
+	}
+
+	void writeByte(char b) {
+		ensureCapacity(1);
+		this.buffer[this.length++] = (byte) b;
+	}
+
+	void writeBytes(byte[] bytes) {
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, this.buffer, this.length, bytes.length);
+		this.length += bytes.length;
+	}
+
+	private void ensureCapacity(int extra) {
+		int required = this.length + extra;
+		if (required > this.buffer.length) {
+			byte[] grown = new byte[Math.max(required, this.buffer.length * 2)];
+			System.arraycopy(this.buffer, 0, grown, 0, this.length);
+			this.buffer = grown;
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package com.sse3.gamesense;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.json.JSONObject;
+
+// The "frame" object sent in an event's data next to its value, which screen
+// handlers read through context-frame-key and GoLisp handlers through
+// (context-frame: self). Each GameEvent owns at most one frame, reused for every
+// send: a key keeps its slot once added, and values are stored as primitives, so
+// updating a frame doesn't allocate.
+//
+// put() notes whether it actually changed anything, which lets
+// GameSenseMod.SendFrame skip a send when the frame is the same as last time. The
+// put methods return the frame, so a frame can be built in one expression.
+//
+// A bitmap, OLED or keyboard, is copied into the frame, so it can be redrawn for the
+// next frame while this one is being sent. Whether it changed is decided by its
+// content hash.
+//
+// Keys are written by game threads and encoded by the sender thread. Both lock the
+// frame, which is never contended for long.
+public final class EventFrame {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	static final int TYPE_INT = 1;
+	static final int TYPE_BOOLEAN = 2;
+	static final int TYPE_STRING = 3;
+	static final int TYPE_BITMAP = 4;
+	static final int TYPE_RGB_BITMAP = 5;
+	static final int TYPE_ENCODED = 6;
+
+	private String[] keys = new String[0];
+	// "<key>": ready to be copied into a request body.
+	private byte[][] encodedKeys = new byte[0][];
+	private int[] types = new int[0];
+	private int[] intValues = new int[0];
+	private String[] stringValues = new String[0];
+	// For bitmaps, kept when the key changes type so the copy can be reused.
+	private byte[][] byteValues = new byte[0][];
+	private int[][] rgbValues = new int[0][];
+	// Caller owned JSON for putEncoded, never written to.
+	private byte[][] encodedValues = new byte[0][];
+	private long[] hashes = new long[0];
+	// Whether a put() changed a value since the last takeChanged().
+	private boolean changed = false;
+
+	public synchronized EventFrame put(String key, int value) {
+		set(slotOf(key), TYPE_INT, value, null);
+		return this;
+	}
+
+	public synchronized EventFrame put(String key, boolean value) {
+		set(slotOf(key), TYPE_BOOLEAN, value ? 1 : 0, null);
+		return this;
+	}
+
+	public synchronized EventFrame put(String key, String value) {
+		set(slotOf(key), TYPE_STRING, 0, value);
+		return this;
+	}
+
+	// A value already encoded as JSON, which is copied into requests as it is. The
+	// array must not be modified afterwards; a different array counts as a change,
+	// so pass the same one for the same value.
+	synchronized EventFrame putEncoded(String key, byte[] json) {
+		int slot = slotOf(key);
+		if (this.types[slot] == TYPE_ENCODED && this.encodedValues[slot] == json) {
+			return this;
+		}
+		this.types[slot] = TYPE_ENCODED;
+		this.intValues[slot] = 0;
+		this.stringValues[slot] = null;
+		this.encodedValues[slot] = json;
+		this.changed = true;
+		return this;
+	}
+
+	public synchronized EventFrame put(String key, OledBitmap bitmap) {
+		int slot = slotOf(key);
+		long hash = bitmap.contentHash();
+		byte[] copy = this.byteValues[slot];
+		if (this.types[slot] == TYPE_BITMAP && this.hashes[slot] == hash && copy.length == bitmap.pixels.length) {
+			return this;
+		}
+		if (copy == null || copy.length != bitmap.pixels.length) {
+			copy = new byte[bitmap.pixels.length];
+			this.byteValues[slot] = copy;
+		}
+		System.arraycopy(bitmap.pixels, 0, copy, 0, copy.length);
+		this.types[slot] = TYPE_BITMAP;
+		this.intValues[slot] = 0;
+		this.stringValues[slot] = null;
+		this.hashes[slot] = hash;
+		this.changed = true;
+		return this;
+	}
+
+	// Under the key Engine expects for the bitmap's resolution, e.g. image-data-128x36.
+	public EventFrame put(OledBitmap bitmap) {
+		return put(bitmap.frameKey, bitmap);
+	}
+
+	public synchronized EventFrame put(String key, KeyboardBitmap bitmap) {
+		int slot = slotOf(key);
+		long hash = bitmap.contentHash();
+		int[] copy = this.rgbValues[slot];
+		if (this.types[slot] == TYPE_RGB_BITMAP && this.hashes[slot] == hash) {
+			return this;
+		}
+		if (copy == null) {
+			copy = new int[KeyboardBitmap.KEYS];
+			this.rgbValues[slot] = copy;
+		}
+		System.arraycopy(bitmap.colors, 0, copy, 0, KeyboardBitmap.KEYS);
+		this.types[slot] = TYPE_RGB_BITMAP;
+		this.intValues[slot] = 0;
+		this.stringValues[slot] = null;
+		this.hashes[slot] = hash;
+		this.changed = true;
+		return this;
+	}
+
+	// Under the bitmap key full-keyboard handlers read.
+	public EventFrame put(KeyboardBitmap bitmap) {
+		return put(KeyboardBitmap.FRAME_KEY, bitmap);
+	}
+
+	private void set(int slot, int type, int intValue, String stringValue) {
+		String old = this.stringValues[slot];
+		if (this.types[slot] != type || this.intValues[slot] != intValue
+				|| (old != stringValue && (old == null || !old.equals(stringValue)))) {
+			this.types[slot] = type;
+			this.intValues[slot] = intValue;
+			this.stringValues[slot] = stringValue;
+			this.changed = true;
+		}
+	}
+
+	// Whether anything changed since the last call.
+	synchronized boolean takeChanged() {
+		boolean changed = this.changed;
+		this.changed = false;
+		return changed;
+	}
+
+	public synchronized boolean isEmpty() {
+		return this.keys.length == 0;
+	}
+
+	private int slotOf(String key) {
+		String[] keys = this.keys;
+		for (int i = 0; i < keys.length; i++) {
+			// Keys are nearly always the same string constants.
+			if (keys[i] == key || keys[i].equals(key)) {
+				return i;
+			}
+		}
+		int slot = keys.length;
+		this.keys = Arrays.copyOf(keys, slot + 1);
+		this.keys[slot] = key;
+		this.encodedKeys = Arrays.copyOf(this.encodedKeys, slot + 1);
+		this.encodedKeys[slot] = (JSONObject.quote(key) + ":").getBytes(UTF_8);
+		this.types = Arrays.copyOf(this.types, slot + 1);
+		this.intValues = Arrays.copyOf(this.intValues, slot + 1);
+		this.stringValues = Arrays.copyOf(this.stringValues, slot + 1);
+		this.byteValues = Arrays.copyOf(this.byteValues, slot + 1);
+		this.rgbValues = Arrays.copyOf(this.rgbValues, slot + 1);
+		this.encodedValues = Arrays.copyOf(this.encodedValues, slot + 1);
+		this.hashes = Arrays.copyOf(this.hashes, slot + 1);
+		return slot;
+	}
+
+	// Writes {"<key>":<value>,...}.
+	synchronized void encode(EventEncoder encoder) {
+		encoder.writeByte('{');
+		for (int i = 0; i < this.keys.length; i++) {
+			if (i > 0) {
+				encoder.writeByte(',');
+			}
+			encoder.writeBytes(this.encodedKeys[i]);
+			switch (this.types[i]) {
+				case TYPE_INT:
+					encoder.writeInt(this.intValues[i]);
+					break;
+				case TYPE_BOOLEAN:
+					encoder.writeBoolean(this.intValues[i] != 0);
+					break;
+				case TYPE_BITMAP:
+					encoder.writeUnsignedBytes(this.byteValues[i]);
+					break;
+				case TYPE_RGB_BITMAP:
+					encoder.writeRgbColors(this.rgbValues[i]);
+					break;
+				case TYPE_ENCODED:
+					encoder.writeBytes(this.encodedValues[i]);
+					break;
+				default:
+					encoder.writeString(this.stringValues[i]);
+					break;
+			}
+		}
+		encoder.writeByte('}');
+	}
+}
@@ -0,0 +1,59 @@
+package com.sse3.gamesense;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters for one game event.
+//
+// enqueued:  values that went into the queue.
+// coalesced: values that replaced one still waiting in the queue.
+// dropped:   values discarded, because the queue overflowed or Engine was unreachable.
+// sent:      values Engine acknowledged.
+// failed:    values in requests that were lost or refused.
+public class EventMetrics implements EventMetricsMBean {
+	private final String name;
+	final LongAdder enqueued = new LongAdder();
+	final LongAdder coalesced = new LongAdder();
+	final LongAdder dropped = new LongAdder();
+	final LongAdder sent = new LongAdder();
+	final LongAdder failed = new LongAdder();
+
+	EventMetrics(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public String getName() {
+		return this.name;
+	}
+
+	@Override
+	public long getEnqueued() {
+		return this.enqueued.sum();
+	}
+
+	@Override
+	public long getCoalesced() {
+		return this.coalesced.sum();
+	}
+
+	@Override
+	public long getDropped() {
+		return this.dropped.sum();
+	}
+
+	@Override
+	public long getSent() {
+		return this.sent.sum();
+	}
+
+	@Override
+	public long getFailed() {
+		return this.failed.sum();
+	}
+
+	@Override
+	public String toString() {
+		return this.name + ": enqueued " + getEnqueued() + ", coalesced " + getCoalesced() + ", dropped " + getDropped()
+				+ ", sent " + getSent() + ", failed " + getFailed();
+	}
+}
@@ -0,0 +1,16 @@
+package com.sse3.gamesense;
+
+// JMX view of one event's EventMetrics.
+public interface EventMetricsMBean {
+	String getName();
+
+	long getEnqueued();
+
+	long getCoalesced();
+
+	long getDropped();
+
+	long getSent();
+
+	long getFailed();
+}
@@ -0,0 +1,115 @@
+package com.sse3.gamesense;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Which events are sent and how, from gamesense-events.json (see EventProfileFile):
+//
+//   {
+//     "FACING":   { "enabled": false },
+//     "AIRLEVEL": { "maxHz": 4, "deadband": 5 },
+//     "HEALTH":   { "priority": "CRITICAL" }
+//   }
+//
+// Every key is optional. An event that is off is neither sampled nor sent. maxHz and
+// deadband work as in eventLimits (see EventThrottle) and replace its line for the
+// event; priority replaces the one the mod gave the event (see DispatchPriority).
+//
+// A profile is immutable once parsed; a changed file becomes a new profile. Whether
+// an event is on is looked up by name once and then kept in an array by handle, so
+// the check on the send path is an array read.
+public class EventProfile {
+
+	public static final EventProfile EMPTY = new EventProfile(new HashMap<String, Entry>());
+
+	private static final byte UNKNOWN = 0;
+	private static final byte ENABLED = 1;
+	private static final byte DISABLED = 2;
+
+	private static class Entry {
+		boolean enabled = true;
+		// Null to keep the event's own.
+		DispatchPriority priority = null;
+		// Negative when not given.
+		double maxHz = -1;
+		int deadband = -1;
+	}
+
+	private static final Entry DEFAULTS = new Entry();
+
+	private final Map<String, Entry> entries;
+	// By event handle.
+	private volatile byte[] states = new byte[0];
+
+	private EventProfile(Map<String, Entry> entries) {
+		this.entries = entries;
+	}
+
+	public static EventProfile parse(String json) throws JSONException {
+		JSONObject root = new JSONObject(json);
+		Map<String, Entry> entries = new HashMap<String, Entry>();
+		Iterator<?> names = root.keys();
+		while (names.hasNext()) {
+			String name = (String) names.next();
+			JSONObject settings = root.getJSONObject(name);
+			Entry entry = new Entry();
+			entry.enabled = settings.optBoolean("enabled", true);
+			if (settings.has("priority")) {
+				try {
+					entry.priority = DispatchPriority.valueOf(settings.getString("priority").toUpperCase());
+				} catch (IllegalArgumentException e) {
+					throw new JSONException("Unknown priority for " + name + ": " + settings.getString("priority"));
+				}
+			}
+			entry.maxHz = settings.optDouble("maxHz", -1);
+			entry.deadband = settings.optInt("deadband", -1);
+			entries.put(name, entry);
+		}
+		return new EventProfile(entries);
+	}
+
+	// Call before sending the event. Also gives the event this profile's priority the
+	// first time it is asked about.
+	public boolean isEnabled(GameEvent event) {
+		byte[] states = this.states;
+		byte state = event.handle < states.length ? states[event.handle] : UNKNOWN;
+		return state != UNKNOWN ? state == ENABLED : resolve(event);
+	}
+
+	private synchronized boolean resolve(GameEvent event) {
+		byte[] states = this.states;
+		if (event.handle >= states.length) {
+			states = Arrays.copyOf(states, Math.max(event.handle + 1, states.length * 2));
+		} else {
+			states = states.clone();
+		}
+		Entry entry = this.entries.get(event.name);
+		if (entry == null) {
+			entry = DEFAULTS;
+		}
+		event.setProfilePriority(entry.priority);
+		states[event.handle] = entry.enabled ? ENABLED : DISABLED;
+		this.states = states;
+		return entry.enabled;
+	}
+
+	// eventLimits with this profile's maxHz and deadband added, for EventThrottle. Later
+	// specs for a name win, so these replace eventLimits' own.
+	public String[] limitSpecs(String[] eventLimits) {
+		List<String> specs = new ArrayList<String>(Arrays.asList(eventLimits));
+		for (Map.Entry<String, Entry> named : this.entries.entrySet()) {
+			Entry entry = named.getValue();
+			if (entry.maxHz >= 0 || entry.deadband >= 0) {
+				specs.add(named.getKey() + "=" + Math.max(0, entry.maxHz) + "," + Math.max(0, entry.deadband));
+			}
+		}
+		return specs.toArray(new String[specs.size()]);
+	}
+}
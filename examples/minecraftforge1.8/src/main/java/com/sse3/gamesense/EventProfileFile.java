@@ -0,0 +1,118 @@
+package com.sse3.gamesense;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Loads the EventProfile from gamesense-events.json in the Forge config directory and
+// watches it the way EngineDiscovery watches coreProps.json (modification time and
+// size, every pollInterval), so edits take effect without restarting the game.
+// poll() is meant for the sender thread, writeDefaults() may come from another one.
+public class EventProfileFile {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final File file;
+	private final long pollIntervalNanos;
+	private long nextPollNanos = 0;
+	private long loadedModified = 0;
+	private long loadedLength = 0;
+
+	// pollIntervalMillis of 0 turns off watching.
+	public EventProfileFile(File file, int pollIntervalMillis) {
+		this.file = file;
+		this.pollIntervalNanos = pollIntervalMillis * 1000000L;
+	}
+
+	public File getFile() {
+		return this.file;
+	}
+
+	// The profile in the file, or EMPTY if there is none or it can't be read.
+	public synchronized EventProfile load() {
+		EventProfile profile = check();
+		return profile != null ? profile : EventProfile.EMPTY;
+	}
+
+	// Returns the new profile if the file changed since the last look, otherwise null.
+	// Only looks at the file every pollInterval.
+	public synchronized EventProfile poll(long nowNanos) {
+		if (this.pollIntervalNanos <= 0 || nowNanos - this.nextPollNanos < 0) {
+			return null;
+		}
+		this.nextPollNanos = nowNanos + this.pollIntervalNanos;
+		return check();
+	}
+
+	// A deleted file counts as a change to EMPTY. A broken one keeps the last profile.
+	private EventProfile check() {
+		long modified = this.file.lastModified();
+		long length = modified == 0 ? 0 : this.file.length();
+		if (modified == this.loadedModified && length == this.loadedLength) {
+			return null;
+		}
+		this.loadedModified = modified;
+		this.loadedLength = length;
+		if (modified == 0) {
+			return EventProfile.EMPTY;
+		}
+		try {
+			return EventProfile.parse(read());
+		} catch (IOException e) {
+			System.out.println("Couldn't read " + this.file + ": " + e);
+		} catch (JSONException e) {
+			// Probably caught mid-save; the finished file will look different again.
+			System.out.println("Ignoring " + this.file + " until it is fixed: " + e.getMessage());
+		}
+		return null;
+	}
+
+	private String read() throws IOException {
+		InputStream in = new FileInputStream(this.file);
+		try {
+			byte[] contents = new byte[(int) Math.min(this.file.length(), 1024 * 1024)];
+			int length = 0;
+			int read;
+			while (length < contents.length && (read = in.read(contents, length, contents.length - length)) > 0) {
+				length += read;
+			}
+			return new String(contents, 0, length, UTF_8);
+		} finally {
+			in.close();
+		}
+	}
+
+	// Writes a profile turning on every event in the registry, as a starting point to
+	// edit, unless the file already exists. That changes nothing, so poll() doesn't
+	// report it.
+	public synchronized void writeDefaults(EventRegistry registry) {
+		if (this.file.exists()) {
+			return;
+		}
+		StringBuilder json = new StringBuilder("{\n");
+		for (int i = 0; i < registry.size(); i++) {
+			json.append("  ").append(JSONObject.quote(registry.get(i).getName())).append(": { \"enabled\": true }");
+			json.append(i + 1 < registry.size() ? ",\n" : "\n");
+		}
+		json.append("}\n");
+		try {
+			OutputStream out = new FileOutputStream(this.file);
+			try {
+				out.write(json.toString().getBytes(UTF_8));
+			} finally {
+				out.close();
+			}
+			this.loadedModified = this.file.lastModified();
+			this.loadedLength = this.file.length();
+		} catch (IOException e) {
+			System.out.println("Couldn't write " + this.file + ": " + e);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package com.sse3.gamesense;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Bounded multi-producer, multi-consumer ring buffer. Each slot carries a sequence
+// number that tells producers and consumers whose turn it is, so offer() and poll()
+// only ever CAS the head or tail counter and never block or take a lock.
+public class EventQueue<E> {
+
+	private final int mask;
+	private final AtomicReferenceArray<E> elements;
+	private final AtomicLongArray sequences;
+	// Next position to poll from and next position to offer into.
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+
+	public EventQueue(int capacity) {
+		if (capacity < 2) {
+			throw new IllegalArgumentException("capacity must be at least 2: " + capacity);
+		}
+		// Round up to a power of two so the slot index is a mask instead of a modulo.
+		int size = Integer.highestOneBit(capacity - 1) << 1;
+		this.mask = size - 1;
+		this.elements = new AtomicReferenceArray<E>(size);
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			this.sequences.set(i, i);
+		}
+	}
+
+	// Returns false without waiting if the queue is full.
+	public boolean offer(E element) {
+		if (element == null) {
+			throw new NullPointerException();
+		}
+		long pos = this.tail.get();
+		for (;;) {
+			int index = (int) pos & this.mask;
+			long diff = this.sequences.get(index) - pos;
+			if (diff == 0) {
+				if (this.tail.compareAndSet(pos, pos + 1)) {
+					this.elements.lazySet(index, element);
+					// Publishing the sequence releases the element to consumers.
+					this.sequences.lazySet(index, pos + 1);
+					return true;
+				}
+				pos = this.tail.get();
+			} else if (diff < 0) {
+				// The slot still holds an element from the previous lap.
+				return false;
+			} else {
+				pos = this.tail.get();
+			}
+		}
+	}
+
+	// Returns null without waiting if the queue is empty.
+	public E poll() {
+		long pos = this.head.get();
+		for (;;) {
+			int index = (int) pos & this.mask;
+			long diff = this.sequences.get(index) - (pos + 1);
+			if (diff == 0) {
+				if (this.head.compareAndSet(pos, pos + 1)) {
+					E element = this.elements.get(index);
+					this.elements.lazySet(index, null);
+					// Hand the slot back to producers for the next lap.
+					this.sequences.lazySet(index, pos + this.mask + 1);
+					return element;
+				}
+				pos = this.head.get();
+			} else if (diff < 0) {
+				return null;
+			} else {
+				pos = this.head.get();
+			}
+		}
+	}
+
+	public boolean isEmpty() {
+		return this.tail.get() == this.head.get();
+	}
+
+	// Approximate while producers or consumers are active.
+	public int size() {
+		long size = this.tail.get() - this.head.get();
+		if (size < 0) {
+			return 0;
+		}
+		return (int) Math.min(size, this.mask + 1);
+	}
+
+	public int capacity() {
+		return this.mask + 1;
+	}
+}
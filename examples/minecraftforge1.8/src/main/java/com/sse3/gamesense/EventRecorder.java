@@ -0,0 +1,181 @@
+package com.sse3.gamesense;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+
+// Appends every event the mod posts to Engine (after throttling and conflation, so
+// exactly the traffic Engine got) to a file, with when it was posted, so a play
+// session can be replayed by EventReplay.
+//
+// The file is "GSRC", a format version byte and the game name, then records:
+//
+//   DEFINE  1, handle, name, 0 | 1 for metadata, [min value, max value, icon id]
+//   EVENT   2, microseconds since the previous EVENT, handle, data length, data
+//
+// data is the event's "data" object exactly as it would be sent, frame included.
+// Numbers are unsigned LEB128 varints, min and max zigzag encoded first; strings
+// are a varint length and UTF-8. An event's DEFINE comes before its first EVENT.
+//
+// Recording runs on the sender thread as each request is posted, so the game thread
+// pays nothing for it. The data is encoded into a reused buffer and copied into a
+// 64 KiB direct buffer, which goes to the file in one write when full. Apart from
+// events sent as a JSONObject, nothing is allocated per event.
+public class EventRecorder {
+
+	static final int MAGIC = 0x47535243;
+	static final int VERSION = 1;
+	static final int RECORD_DEFINE = 1;
+	static final int RECORD_EVENT = 2;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int BUFFER_SIZE = 64 * 1024;
+	// Largest varint record header: type, time, handle and data length.
+	private static final int MAX_HEADER = 1 + 10 + 5 + 5;
+
+	private final File file;
+	private final EventEncoder encoder;
+	private final long startNanos;
+	// Null once closed.
+	private FileChannel channel;
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private boolean[] defined = new boolean[0];
+	private long lastMicros = 0;
+	private long recorded = 0;
+
+	public EventRecorder(File file, String gameName) throws IOException {
+		this.file = file;
+		this.encoder = new EventEncoder(gameName);
+		this.channel = new FileOutputStream(file).getChannel();
+		this.startNanos = System.nanoTime();
+		this.buffer.putInt(MAGIC);
+		this.buffer.put((byte) VERSION);
+		putString(gameName);
+	}
+
+	// A new file in dir named after the current time, e.g. gamesense-20150601-201502.gsrec.
+	public static File newFile(File dir) {
+		return new File(dir, "gamesense-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".gsrec");
+	}
+
+	public File getFile() {
+		return this.file;
+	}
+
+	public synchronized long getRecorded() {
+		return this.recorded;
+	}
+
+	// Call once the event was posted. An I/O error stops the recording instead of
+	// reaching the caller.
+	public synchronized void record(GameEvent event) {
+		if (this.channel == null) {
+			return;
+		}
+		long micros = (System.nanoTime() - this.startNanos) / 1000;
+		try {
+			if (event.handle >= this.defined.length || !this.defined[event.handle]) {
+				define(event);
+			}
+			this.encoder.encodeData(event);
+			int dataLength = this.encoder.getLength();
+			ensureRoom(MAX_HEADER + dataLength);
+			this.buffer.put((byte) RECORD_EVENT);
+			putVarLong(micros - this.lastMicros);
+			putVarLong(event.handle);
+			putVarLong(dataLength);
+			this.buffer.put(this.encoder.getBuffer(), 0, dataLength);
+			this.lastMicros = micros;
+			this.recorded++;
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.out.println("Couldn't write to " + this.file + ", stopped recording GameSense events");
+			closeQuietly();
+		}
+	}
+
+	private void define(GameEvent event) throws IOException {
+		byte[] name = event.name.getBytes(UTF_8);
+		ensureRoom(1 + 5 + 5 + name.length + 1 + 15);
+		this.buffer.put((byte) RECORD_DEFINE);
+		putVarLong(event.handle);
+		putVarLong(name.length);
+		this.buffer.put(name);
+		if (event.hasMetadata()) {
+			this.buffer.put((byte) 1);
+			putVarLong(zigzag(event.getMinValue()));
+			putVarLong(zigzag(event.getMaxValue()));
+			putVarLong(event.getIconId());
+		} else {
+			this.buffer.put((byte) 0);
+		}
+		if (event.handle >= this.defined.length) {
+			this.defined = Arrays.copyOf(this.defined, Math.max(event.handle + 1, this.defined.length * 2));
+		}
+		this.defined[event.handle] = true;
+	}
+
+	// Writes what is buffered and closes the file. Later record() calls do nothing.
+	public synchronized void close() throws IOException {
+		if (this.channel == null) {
+			return;
+		}
+		try {
+			flush();
+		} finally {
+			this.channel.close();
+			this.channel = null;
+		}
+	}
+
+	private void closeQuietly() {
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+		}
+		this.channel = null;
+	}
+
+	private void ensureRoom(int bytes) throws IOException {
+		if (this.buffer.remaining() >= bytes) {
+			return;
+		}
+		flush();
+		if (this.buffer.capacity() < bytes) {
+			// A huge caller supplied JSONObject.
+			this.buffer = ByteBuffer.allocateDirect(bytes);
+		}
+	}
+
+	private void flush() throws IOException {
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+	private void putString(String value) {
+		byte[] bytes = value.getBytes(UTF_8);
+		putVarLong(bytes.length);
+		this.buffer.put(bytes);
+	}
+
+	private void putVarLong(long value) {
+		while ((value & ~0x7FL) != 0) {
+			this.buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		this.buffer.put((byte) value);
+	}
+
+	static long zigzag(int value) {
+		return ((value << 1) ^ (value >> 31)) & 0xffffffffL;
+	}
+}
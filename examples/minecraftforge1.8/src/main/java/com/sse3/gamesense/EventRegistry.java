@@ -0,0 +1,78 @@
+package com.sse3.gamesense;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Every game event the mod has used, with its one GameEvent. Events are numbered in
+// the order they are registered, and that handle lets later stages keep per-event
+// state in plain arrays instead of looking names up.
+//
+// Registration is rare (usually once at startup) and copies the handle array, so
+// lookups from any thread need no lock.
+public class EventRegistry {
+
+	private final ConcurrentHashMap<String, GameEvent> byName = new ConcurrentHashMap<String, GameEvent>();
+	private volatile GameEvent[] byHandle = new GameEvent[0];
+	// Bumped whenever an event gets (new) metadata for /register_game_event or handlers
+	// for /bind_game_event.
+	private volatile int metadataVersion = 0;
+
+	public GameEvent get(int handle) {
+		return this.byHandle[handle];
+	}
+
+	// The GameEvent for a name, registered the first time the name is used.
+	public GameEvent get(String name) {
+		GameEvent event = this.byName.get(name);
+		return event != null ? event : register(name);
+	}
+
+	public synchronized GameEvent register(String name) {
+		GameEvent event = this.byName.get(name);
+		if (event == null) {
+			GameEvent[] events = this.byHandle;
+			event = new GameEvent(name, events.length);
+			events = Arrays.copyOf(events, events.length + 1);
+			events[event.handle] = event;
+			// Publish the handle before the name, so a handle found through the name
+			// can always be looked up.
+			this.byHandle = events;
+			this.byName.put(name, event);
+		}
+		return event;
+	}
+
+	// Also describes the event to Engine: the range of its int values and the icon
+	// shown next to it.
+	public synchronized GameEvent register(String name, int minValue, int maxValue, int iconId) {
+		GameEvent event = register(name);
+		event.setMetadata(minValue, maxValue, iconId);
+		this.metadataVersion++;
+		return event;
+	}
+
+	// Also binds handlers to the event, replacing any Engine had for it. handlers is
+	// the JSON array of handler objects described in doc/api/writing-handlers-in-json.md.
+	public synchronized GameEvent bind(String name, int minValue, int maxValue, int iconId, String handlers) {
+		GameEvent event = register(name);
+		// Before the version moves, so the sender never sees the new version without them.
+		event.setHandlers(handlers);
+		event.setMetadata(minValue, maxValue, iconId);
+		this.metadataVersion++;
+		return event;
+	}
+
+	// Sent along with the rest of the metadata, so only matters for registered events.
+	public synchronized void setValueOptional(GameEvent event, boolean valueOptional) {
+		event.setValueOptional(valueOptional);
+		this.metadataVersion++;
+	}
+
+	public int size() {
+		return this.byHandle.length;
+	}
+
+	public int getMetadataVersion() {
+		return this.metadataVersion;
+	}
+}
@@ -0,0 +1,236 @@
+package com.sse3.gamesense;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+// Sends a recording made by EventRecorder to a SteelSeries Engine (or anything that
+// speaks its API, like the mock engine) with the original timing, or speed times
+// faster, and reports throughput and latency. Outside of Minecraft:
+//
+//   java -cp gamesense.jar:json.jar com.sse3.gamesense.EventReplay <recording> [speed] [host:port]
+//
+// speed 1 (the default) keeps the original timing and 0 sends as fast as Engine
+// takes it. Without an address Engine is found as the mod would find it. Events
+// are posted one per /game_event through the mod's own transport, pipelined up to
+// its in-flight limit; events the mod registered are registered first.
+public class EventReplay {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int TAG_EVENT = 0;
+	private static final int TAG_REGISTRATION = 1;
+	private static final long READY_WAIT_NANOS = 1000000L;
+	private static final long DRAIN_WAIT_NANOS = 5000000000L;
+
+	private final DataInputStream in;
+	private final double speed;
+	private final EngineTransport transport;
+	private final EventRegistry registry = new EventRegistry();
+	// By the event's handle in the recording, which is the mod's handle and not the one
+	// it gets in registry: events are defined when first sent, not when registered.
+	private GameEvent[] recorded = new GameEvent[0];
+	private EventEncoder encoder;
+	private byte[] data = new byte[1024];
+
+	private final LatencyHistogram roundTrips = new LatencyHistogram();
+	// How far behind the recording's timing each event was posted.
+	private final LatencyHistogram lateness = new LatencyHistogram();
+	private long posted = 0;
+	private long succeeded = 0;
+	private long httpErrors = 0;
+	private long lost = 0;
+	private long notSent = 0;
+
+	public EventReplay(DataInputStream in, double speed, EngineTransport transport) {
+		this.in = in;
+		this.speed = speed;
+		this.transport = transport;
+		transport.setListener(new EngineTransport.Listener() {
+			@Override
+			public void onResponse(int tag, int status, long roundTripNanos) {
+				boolean ok = status >= 200 && status < 300;
+				if (tag == TAG_REGISTRATION) {
+					if (!ok) {
+						System.out.println("Registration rejected with status " + status);
+					}
+					return;
+				}
+				EventReplay.this.roundTrips.record(roundTripNanos);
+				if (ok) {
+					EventReplay.this.succeeded++;
+				} else {
+					EventReplay.this.httpErrors++;
+				}
+			}
+
+			@Override
+			public void onFailure(int tag) {
+				if (tag == TAG_EVENT) {
+					EventReplay.this.lost++;
+				}
+			}
+
+			@Override
+			public void onConnected(InetSocketAddress address) {
+				System.out.println("Connected to " + address);
+			}
+
+			@Override
+			public void onConnectFailed(IOException cause) {
+				System.out.println("Couldn't connect: " + cause);
+			}
+		});
+	}
+
+	public void run() throws IOException {
+		if (this.in.readInt() != EventRecorder.MAGIC) {
+			throw new IOException("Not a GameSense recording");
+		}
+		int version = this.in.readUnsignedByte();
+		if (version != EventRecorder.VERSION) {
+			throw new IOException("Unsupported recording version " + version);
+		}
+		this.encoder = new EventEncoder(readString());
+
+		long start = System.nanoTime();
+		long micros = 0;
+		int type;
+		while ((type = this.in.read()) != -1) {
+			if (type == EventRecorder.RECORD_DEFINE) {
+				define();
+			} else if (type == EventRecorder.RECORD_EVENT) {
+				micros += readVarLong();
+				int handle = (int) readVarLong();
+				GameEvent event = handle < this.recorded.length ? this.recorded[handle] : null;
+				if (event == null) {
+					throw new IOException("Corrupt recording, event " + handle + " was never defined");
+				}
+				int length = (int) readVarLong();
+				if (length > this.data.length) {
+					this.data = new byte[Math.max(length, this.data.length * 2)];
+				}
+				this.in.readFully(this.data, 0, length);
+				long due = this.speed > 0 ? start + (long) (micros * 1000 / this.speed) : System.nanoTime();
+				waitUntil(due);
+				this.lateness.record(System.nanoTime() - due);
+				this.encoder.encodeEvent(event, this.data, length);
+				post("/game_event", TAG_EVENT);
+			} else {
+				throw new IOException("Corrupt recording, record type " + type);
+			}
+		}
+		this.transport.awaitResponses(DRAIN_WAIT_NANOS);
+		report(System.nanoTime() - start);
+	}
+
+	private void define() throws IOException {
+		int handle = (int) readVarLong();
+		String name = readString();
+		GameEvent event;
+		if (this.in.readUnsignedByte() != 0) {
+			int min = unzigzag(readVarLong());
+			int max = unzigzag(readVarLong());
+			int icon = (int) readVarLong();
+			event = this.registry.register(name, min, max, icon);
+			this.encoder.encodeRegistration(event);
+			waitUntil(System.nanoTime());
+			this.transport.post("/register_game_event", this.encoder.getBuffer(), this.encoder.getLength(), TAG_REGISTRATION);
+		} else {
+			event = this.registry.register(name);
+		}
+		if (handle >= this.recorded.length) {
+			this.recorded = Arrays.copyOf(this.recorded, Math.max(handle + 1, this.recorded.length * 2));
+		}
+		this.recorded[handle] = event;
+	}
+
+	// Services responses until dueNanos has passed and the transport can take a request.
+	private void waitUntil(long dueNanos) {
+		long wait;
+		while ((wait = dueNanos - System.nanoTime()) > 0) {
+			this.transport.poll(wait);
+		}
+		while (!this.transport.isReady()) {
+			this.transport.poll(READY_WAIT_NANOS);
+		}
+	}
+
+	private void post(String path, int tag) {
+		if (this.transport.post(path, this.encoder.getBuffer(), this.encoder.getLength(), tag)) {
+			this.posted++;
+		} else {
+			this.notSent++;
+		}
+		this.transport.poll(0);
+	}
+
+	private void report(long elapsedNanos) {
+		double seconds = elapsedNanos / 1e9;
+		System.out.println(String.format("%d events in %.2fs, %.1f/s: %d ok, %d HTTP errors, %d lost, %d not sent",
+				this.posted + this.notSent, seconds, (this.posted + this.notSent) / seconds, this.succeeded, this.httpErrors,
+				this.lost, this.notSent));
+		System.out.println(String.format("round trip p50 %.0fus p99 %.0fus max %.0fus",
+				this.roundTrips.getPercentile(0.5) / 1e3, this.roundTrips.getPercentile(0.99) / 1e3,
+				this.roundTrips.getMax() / 1e3));
+		System.out.println(String.format("behind schedule p50 %.0fus p99 %.0fus max %.0fus",
+				this.lateness.getPercentile(0.5) / 1e3, this.lateness.getPercentile(0.99) / 1e3,
+				this.lateness.getMax() / 1e3));
+	}
+
+	private String readString() throws IOException {
+		byte[] bytes = new byte[(int) readVarLong()];
+		this.in.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	private long readVarLong() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = this.in.read();
+			if (b == -1) {
+				throw new EOFException("Truncated recording");
+			}
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Corrupt recording, varint too long");
+	}
+
+	private static int unzigzag(long value) {
+		int bits = (int) value;
+		return (bits >>> 1) ^ -(bits & 1);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1 || args.length > 3) {
+			System.out.println("Usage: EventReplay <recording> [speed] [host:port]");
+			System.exit(2);
+		}
+		double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+		EngineDiscovery discovery = new EngineDiscovery("", args.length > 2 ? args[2] : "", 0);
+		InetSocketAddress address = discovery.resolve();
+		if (address == null) {
+			System.out.println("Couldn't find SteelSeries Engine");
+			System.exit(1);
+		}
+		System.out.println("Replaying " + args[0] + " to " + discovery.getAddress()
+				+ (speed > 0 ? " at " + speed + "x speed" : " as fast as possible"));
+
+		NioHttpTransport transport = new NioHttpTransport(1000, 5000);
+		transport.setAddress(address);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args[0])));
+		try {
+			new EventReplay(in, speed, transport).run();
+		} finally {
+			in.close();
+			transport.close();
+		}
+	}
+}
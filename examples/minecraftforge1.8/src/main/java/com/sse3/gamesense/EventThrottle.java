@@ -0,0 +1,248 @@
+package com.sse3.gamesense;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Per-event limits applied before an event is queued:
+//
+// maxHz:    token bucket holding one token, so at most maxHz sends per second.
+// deadband: an int value is only sent once it moved by at least this much from the
+//           last sent value.
+//
+// A value that isn't sent because of either limit is not lost. It stays in the
+// event's GameEvent, and release() queues it once the bucket has a token again, or
+// for the deadband once the value has settled for settleMillis. So the last value
+// always reaches Engine, just later.
+//
+// To keep clock reads off the per-event path, admit() uses the time passed to the last
+// release(); release() is meant to be called every tick anyway.
+//
+// The set of limited events is fixed until reconfigure(). Each event's limit (or that
+// it has none) is looked up by name once and then kept in an array by event handle, so
+// events without a limit pass straight through without locking. The rest is
+// synchronized, since world events can arrive on the integrated server's thread.
+public class EventThrottle {
+
+	public interface Sink {
+		void queue(GameEvent event);
+	}
+
+	private static class Limit {
+		final String name;
+		final double tokensPerNano;
+		final int deadband;
+
+		double tokens = 1;
+		long lastRefillNanos = 0;
+		boolean hasSent = false;
+		int lastSent = 0;
+		// Set while event holds a value that hasn't been queued.
+		GameEvent held = null;
+		boolean heldByDeadband = false;
+		// The held value, if it is an int.
+		int heldInt = 0;
+		long lastChangeNanos = 0;
+		// Set under the throttle's lock once reconfigure() replaced this limit, for
+		// senders that looked it up before.
+		boolean retired = false;
+
+		Limit(String name, double maxHz, int deadband) {
+			this.name = name;
+			this.tokensPerNano = maxHz / 1e9;
+			this.deadband = deadband;
+		}
+
+		boolean takeToken(long nowNanos) {
+			if (this.tokensPerNano <= 0) {
+				return true;
+			}
+			this.tokens = Math.min(1, this.tokens + (nowNanos - this.lastRefillNanos) * this.tokensPerNano);
+			this.lastRefillNanos = nowNanos;
+			if (this.tokens < 1) {
+				return false;
+			}
+			this.tokens -= 1;
+			return true;
+		}
+	}
+
+	// Marks an event that was looked up and has no limit.
+	private static final Limit NO_LIMIT = new Limit("", 0, 0);
+
+	private Map<String, Limit> limits;
+	private volatile Limit[] all;
+	// By event handle; null until the event is first seen.
+	private volatile Limit[] byHandle = new Limit[0];
+	private final long settleNanos;
+	private int heldCount = 0;
+	// As of the last release().
+	private long nowNanos = System.nanoTime();
+
+	// Each entry is "NAME=maxHz,deadband", 0 meaning no limit, e.g. "AIRLEVEL=4,5".
+	public EventThrottle(String[] specs, int settleMillis) {
+		this.settleNanos = settleMillis * 1000000L;
+		configure(specs);
+	}
+
+	// Replaces every limit with the ones in specs. Held values are queued right away
+	// rather than lost; the new limits apply from the next admit() on.
+	public synchronized void reconfigure(String[] specs, Sink sink) {
+		for (int i = 0; i < this.all.length; i++) {
+			Limit limit = this.all[i];
+			limit.retired = true;
+			if (limit.held != null) {
+				GameEvent event = limit.held;
+				sent(limit);
+				sink.queue(event);
+			}
+		}
+		configure(specs);
+	}
+
+	private void configure(String[] specs) {
+		Map<String, Limit> limits = new HashMap<String, Limit>();
+		for (String spec : specs) {
+			Limit limit = parse(spec);
+			if (limit != null) {
+				limits.put(limit.name, limit);
+			}
+		}
+		this.limits = limits;
+		this.byHandle = new Limit[0];
+		this.all = limits.values().toArray(new Limit[limits.size()]);
+	}
+
+	// Called after a new value was stored in event. Returns true if it should be queued now.
+	public boolean admit(GameEvent event) {
+		if (this.all.length == 0) {
+			return true;
+		}
+		Limit limit = limitOf(event);
+		return limit == NO_LIMIT || admitLimited(limit, event);
+	}
+
+	// Same as admit() for an int value, which also gets the deadband.
+	public boolean admitInt(GameEvent event, int value) {
+		if (this.all.length == 0) {
+			return true;
+		}
+		Limit limit = limitOf(event);
+		return limit == NO_LIMIT || admitLimitedInt(limit, event, value);
+	}
+
+	private Limit limitOf(GameEvent event) {
+		Limit[] byHandle = this.byHandle;
+		Limit limit = event.handle < byHandle.length ? byHandle[event.handle] : null;
+		return limit != null ? limit : lookUp(event);
+	}
+
+	private synchronized Limit lookUp(GameEvent event) {
+		Limit[] byHandle = this.byHandle;
+		if (event.handle >= byHandle.length) {
+			byHandle = Arrays.copyOf(byHandle, Math.max(event.handle + 1, byHandle.length * 2));
+		} else {
+			byHandle = byHandle.clone();
+		}
+		Limit limit = this.limits.get(event.name);
+		byHandle[event.handle] = limit != null ? limit : NO_LIMIT;
+		this.byHandle = byHandle;
+		return byHandle[event.handle];
+	}
+
+	private synchronized boolean admitLimited(Limit limit, GameEvent event) {
+		if (limit.retired) {
+			return true;
+		}
+		long now = this.nowNanos;
+		limit.lastChangeNanos = now;
+		if (!limit.takeToken(now)) {
+			hold(limit, event, false);
+			return false;
+		}
+		sent(limit);
+		return true;
+	}
+
+	private synchronized boolean admitLimitedInt(Limit limit, GameEvent event, int value) {
+		if (limit.retired) {
+			return true;
+		}
+		long now = this.nowNanos;
+		limit.lastChangeNanos = now;
+		limit.heldInt = value;
+		if (limit.hasSent && Math.abs((long) value - limit.lastSent) < limit.deadband) {
+			hold(limit, event, true);
+			return false;
+		}
+		if (!limit.takeToken(now)) {
+			hold(limit, event, false);
+			return false;
+		}
+		limit.lastSent = value;
+		sent(limit);
+		return true;
+	}
+
+	// Queues held values whose limit has passed. Call regularly, e.g. once per tick.
+	public synchronized void release(long nowNanos, Sink sink) {
+		if (this.all.length == 0) {
+			return;
+		}
+		long now = this.nowNanos = nowNanos;
+		if (this.heldCount == 0) {
+			return;
+		}
+		for (int i = 0; i < this.all.length; i++) {
+			Limit limit = this.all[i];
+			GameEvent event = limit.held;
+			if (event == null) {
+				continue;
+			}
+			if (limit.heldByDeadband && now - limit.lastChangeNanos < this.settleNanos) {
+				continue;
+			}
+			if (!limit.takeToken(now)) {
+				continue;
+			}
+			if (limit.deadband > 0) {
+				limit.lastSent = limit.heldInt;
+			}
+			sent(limit);
+			sink.queue(event);
+		}
+	}
+
+	private void hold(Limit limit, GameEvent event, boolean byDeadband) {
+		if (limit.held == null) {
+			this.heldCount++;
+		}
+		limit.held = event;
+		limit.heldByDeadband = byDeadband;
+	}
+
+	private void sent(Limit limit) {
+		if (limit.held != null) {
+			limit.held = null;
+			this.heldCount--;
+		}
+		limit.hasSent = true;
+	}
+
+	private static Limit parse(String spec) {
+		try {
+			int equals = spec.indexOf('=');
+			String name = spec.substring(0, equals).trim();
+			String[] values = spec.substring(equals + 1).split(",");
+			double maxHz = Double.parseDouble(values[0].trim());
+			int deadband = values.length > 1 ? Integer.parseInt(values[1].trim()) : 0;
+			if (name.length() == 0 || maxHz < 0 || deadband < 0) {
+				throw new IllegalArgumentException();
+			}
+			return new Limit(name, maxHz, deadband);
+		} catch (RuntimeException e) {
+			System.out.println("Ignoring malformed event limit in gamesense config: " + spec);
+			return null;
+		}
+	}
+}
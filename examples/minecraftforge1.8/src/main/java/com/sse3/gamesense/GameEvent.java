@@ -0,0 +1,228 @@
+package com.sse3.gamesense;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONObject;
+
+// One named game event and its latest value. There is a single instance per event
+// name (see EventRegistry), reused for every send, so setting a value never allocates.
+//
+// Values are written by game threads and read by the sender thread. Writers move
+// the version to an odd number, store the fields and move it to the next even
+// number; readers retry until they see the same even version before and after.
+public final class GameEvent {
+
+	static final int TYPE_NONE = 0;
+	static final int TYPE_INT = 1;
+	static final int TYPE_BOOLEAN = 2;
+	static final int TYPE_STRING = 3;
+	// A caller supplied JSONObject sent as the whole "data" object.
+	static final int TYPE_DATA = 4;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	final String name;
+	// Index in the EventRegistry.
+	final int handle;
+	// "event":"<name>","data": ready to be copied into a request body.
+	final byte[] encodedName;
+	// Set while the event is waiting in the ConflatingBuffer.
+	final AtomicBoolean pending = new AtomicBoolean();
+	private volatile DispatchPriority priority = DispatchPriority.TELEMETRY;
+	// The priority given by SetEventPriority, which the event profile may override.
+	private volatile DispatchPriority ownPriority = DispatchPriority.TELEMETRY;
+	// CRITICAL only: System.nanoTime() after which a retry is no longer worth it, moved
+	// on by every new value.
+	volatile long deadlineNanos = 0;
+	// Whether the latest value is state worth resending when Engine has to be brought
+	// up to date again; not for one-off events like START and FINISH.
+	private volatile boolean resync = true;
+	// Sender thread only: sends in a row that didn't get a 2xx from Engine.
+	int attempts = 0;
+	// Sender thread only: number of the request carrying this CRITICAL event that hasn't
+	// been answered yet, or -1.
+	long inFlightRequest = -1;
+
+	// For /register_game_event; only events with metadata are registered with Engine.
+	private volatile boolean hasMetadata = false;
+	private volatile int minValue = 0;
+	private volatile int maxValue = 100;
+	private volatile int iconId = 0;
+	// Engine runs the handlers on every send, even when the value is the one it has.
+	private volatile boolean valueOptional = false;
+	// For /bind_game_event: the handlers array as JSON, or null to only register the event.
+	private volatile String handlers = null;
+
+	private final AtomicInteger version = new AtomicInteger();
+	private volatile int type = TYPE_NONE;
+	private volatile int intValue = 0;
+	private volatile Object objectValue = null;
+	// Sent along with the value once something has been put in it.
+	private volatile EventFrame frame = null;
+
+	GameEvent(String name, int handle) {
+		this.name = name;
+		this.handle = handle;
+		this.encodedName = ("\"event\":" + JSONObject.quote(name) + ",\"data\":").getBytes(UTF_8);
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public int getHandle() {
+		return this.handle;
+	}
+
+	void setMetadata(int minValue, int maxValue, int iconId) {
+		this.minValue = minValue;
+		this.maxValue = maxValue;
+		this.iconId = iconId;
+		this.hasMetadata = true;
+	}
+
+	void setHandlers(String handlers) {
+		this.handlers = handlers;
+	}
+
+	String getHandlers() {
+		return this.handlers;
+	}
+
+	boolean hasHandlers() {
+		return this.handlers != null;
+	}
+
+	public DispatchPriority getPriority() {
+		return this.priority;
+	}
+
+	void setPriority(DispatchPriority priority) {
+		this.ownPriority = priority;
+		this.priority = priority;
+	}
+
+	// Null to go back to the event's own priority.
+	void setProfilePriority(DispatchPriority priority) {
+		this.priority = priority != null ? priority : this.ownPriority;
+	}
+
+	void setResync(boolean resync) {
+		this.resync = resync;
+	}
+
+	boolean isResync() {
+		return this.resync;
+	}
+
+	boolean isCritical() {
+		return this.priority == DispatchPriority.CRITICAL;
+	}
+
+	boolean hasMetadata() {
+		return this.hasMetadata;
+	}
+
+	int getMinValue() {
+		return this.minValue;
+	}
+
+	int getMaxValue() {
+		return this.maxValue;
+	}
+
+	int getIconId() {
+		return this.iconId;
+	}
+
+	void setValueOptional(boolean valueOptional) {
+		this.valueOptional = valueOptional;
+	}
+
+	boolean isValueOptional() {
+		return this.valueOptional;
+	}
+
+	// The frame sent with this event's value, created on first use.
+	public EventFrame getFrame() {
+		EventFrame frame = this.frame;
+		if (frame == null) {
+			synchronized (this) {
+				frame = this.frame;
+				if (frame == null) {
+					frame = new EventFrame();
+					this.frame = frame;
+				}
+			}
+		}
+		return frame;
+	}
+
+	public boolean hasValue() {
+		return this.type != TYPE_NONE;
+	}
+
+	// Whether the current value is exactly this one.
+	boolean hasInt(int value) {
+		return this.type == TYPE_INT && this.intValue == value;
+	}
+
+	boolean hasBoolean(boolean value) {
+		return this.type == TYPE_BOOLEAN && this.intValue == (value ? 1 : 0);
+	}
+
+	boolean hasString(String value) {
+		Object current = this.objectValue;
+		return this.type == TYPE_STRING && (current == value || (current != null && current.equals(value)));
+	}
+
+	public void setInt(int value) {
+		write(TYPE_INT, value, null);
+	}
+
+	public void setBoolean(boolean value) {
+		write(TYPE_BOOLEAN, value ? 1 : 0, null);
+	}
+
+	public void setString(String value) {
+		write(TYPE_STRING, 0, value);
+	}
+
+	// The object is encoded when the event is sent, so it must not be changed afterwards.
+	public void setData(JSONObject data) {
+		write(TYPE_DATA, 0, data);
+	}
+
+	private void write(int type, int intValue, Object objectValue) {
+		int v;
+		do {
+			v = this.version.get();
+		} while ((v & 1) != 0 || !this.version.compareAndSet(v, v + 1));
+		this.type = type;
+		this.intValue = intValue;
+		this.objectValue = objectValue;
+		this.version.set(v + 2);
+	}
+
+	// Writes a consistent snapshot of the current value as the "data" object.
+	void encodeData(EventEncoder encoder) {
+		int type;
+		int intValue;
+		Object objectValue;
+		for (;;) {
+			int v = this.version.get();
+			if ((v & 1) != 0) {
+				continue;
+			}
+			type = this.type;
+			intValue = this.intValue;
+			objectValue = this.objectValue;
+			if (this.version.get() == v) {
+				break;
+			}
+		}
+		encoder.writeData(type, intValue, objectValue, this.frame);
+	}
+}
@@ -0,0 +1,57 @@
+package com.sse3.gamesense;
+
+import java.io.IOException;
+
+import net.minecraft.command.CommandBase;
+import net.minecraft.command.ICommandSender;
+import net.minecraft.util.ChatComponentText;
+
+// /gamesense prints the GameSense metrics to chat: the F3 summary, then the counters
+// of every event. /gamesense record and /gamesense stop start and stop recording the
+// events sent, see EventRecorder.
+public class GameSenseCommand extends CommandBase {
+	private final GameSenseMod mod;
+
+	public GameSenseCommand(GameSenseMod mod) {
+		this.mod = mod;
+	}
+
+	@Override
+	public String getCommandName() {
+		return "gamesense";
+	}
+
+	@Override
+	public String getCommandUsage(ICommandSender sender) {
+		return "/gamesense [record|stop]";
+	}
+
+	// A client command, anyone may use it.
+	@Override
+	public int getRequiredPermissionLevel() {
+		return 0;
+	}
+
+	@Override
+	public void processCommand(ICommandSender sender, String[] args) {
+		if (args.length > 0 && args[0].equals("record")) {
+			try {
+				sender.addChatMessage(new ChatComponentText("Recording GameSense events to " + this.mod.StartRecording()));
+			} catch (IOException e) {
+				sender.addChatMessage(new ChatComponentText("Couldn't start recording: " + e));
+			}
+			return;
+		}
+		if (args.length > 0 && args[0].equals("stop")) {
+			EventRecorder stopped = this.mod.StopRecording();
+			sender.addChatMessage(new ChatComponentText(stopped == null ? "Not recording"
+					: "Recorded " + stopped.getRecorded() + " events to " + stopped.getFile()));
+			return;
+		}
+		GameSenseMetrics metrics = this.mod.GetMetrics();
+		sender.addChatMessage(new ChatComponentText(metrics.getSummary()));
+		for (EventMetrics event : metrics.getEvents()) {
+			sender.addChatMessage(new ChatComponentText(event.toString()));
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package com.sse3.gamesense;
+
+import java.io.File;
+
+import net.minecraftforge.common.config.Configuration;
+
+public class GameSenseConfig {
+	public static final String CATEGORY_DISPATCH = "dispatch";
+	public static final String CATEGORY_ENGINE = "engine";
+
+	private static final String[] DEFAULT_EVENT_LIMITS = { "AIRLEVEL=4,5", "TOOL=2,0" };
+
+	// Maximum number of distinct events waiting for the sender thread.
+	public int queueCapacity = 256;
+	public OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+	// For CRITICAL events: sends tried before giving up, and how long after being sent they may still go out.
+	public int criticalMaxAttempts = 3;
+	public int criticalDeadlineMs = 2000;
+	// Send queued events through /multiple_game_events when Engine supports it.
+	public boolean batchEvents = true;
+	public int maxBatchSize = 32;
+	// Bounds for SampleScheduler, in client ticks, and the round trip it considers slow.
+	public int minSampleIntervalTicks = 1;
+	public int maxSampleIntervalTicks = 10;
+	public int slowRoundTripMs = 50;
+	// 0 disables heartbeats.
+	public int heartbeatIntervalMs = 5000;
+	// "NAME=maxHz,deadband", see EventThrottle.
+	public String[] eventLimits = DEFAULT_EVENT_LIMITS;
+	public int deadbandSettleMs = 500;
+	// 0 disables watching gamesense-events.json for changes, see EventProfile.
+	public int eventProfilePollMs = 1000;
+	public int connectTimeoutMs = 100;
+	// An unanswered request after this long means the connection is dropped and reopened.
+	public int responseTimeoutMs = 1000;
+	// Circuit breaker: failures in a row before giving Engine a rest, and how long that rest is.
+	public int failureThreshold = 3;
+	public int backoffBaseMs = 1000;
+	public int backoffMaxMs = 60000;
+	// Where to find Engine. Empty means the platform's coreProps.json.
+	public String corePropsPath = "";
+	public String engineAddress = "";
+	// 0 disables watching coreProps.json for a new address.
+	public int discoveryPollMs = 1000;
+	public boolean metricsJmx = true;
+	// Record every sent event to gamesense-recordings from startup, see EventRecorder.
+	public boolean recordEvents = false;
+	// TOOL, TOOLMATERIAL, TOOLDURABILITY and SHOWTOOL instead of one TOOL event with a frame.
+	public boolean legacyToolEvents = false;
+	// Map and compass on 128x36 OLED screens, see MinimapRenderer.
+	public boolean oledMinimap = false;
+	public int oledMaxFps = 5;
+	// Health, water and damage colours behind the other events on per-key RGB keyboards, see LightingRenderer.
+	public boolean keyboardLighting = false;
+	public int keyboardMaxFps = 10;
+
+	private final Configuration config;
+
+	public GameSenseConfig(File configFile) {
+		this.config = new Configuration(configFile);
+	}
+
+	public void load() {
+		this.config.load();
+
+		this.queueCapacity = this.config.getInt("queueCapacity", CATEGORY_DISPATCH, 256, 16, 65536,
+				"Maximum number of distinct game events waiting to be sent to SteelSeries Engine. Only the newest value of each event is kept.");
+
+		OverflowPolicy[] policies = OverflowPolicy.values();
+		String[] policyNames = new String[policies.length];
+		for (int i = 0; i < policies.length; i++) {
+			policyNames[i] = policies[i].name();
+		}
+		String policyName = this.config.getString("overflowPolicy", CATEGORY_DISPATCH, OverflowPolicy.DROP_OLDEST.name(),
+				"What to do when the event queue is full. DROP_OLDEST discards the oldest queued event, DROP_NEWEST discards the new one.",
+				policyNames);
+		try {
+			this.overflowPolicy = OverflowPolicy.valueOf(policyName.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			System.out.println("Unknown overflowPolicy " + policyName + " in gamesense config, using DROP_OLDEST");
+			this.overflowPolicy = OverflowPolicy.DROP_OLDEST;
+		}
+
+		this.criticalMaxAttempts = this.config.getInt("criticalMaxAttempts", CATEGORY_DISPATCH, 3, 1, 10,
+				"How many times a critical event such as START or FINISH is sent before giving up on it.");
+		this.criticalDeadlineMs = this.config.getInt("criticalDeadlineMs", CATEGORY_DISPATCH, 2000, 100, 30000,
+				"How long after it was sent a critical event such as START or FINISH may still go out, in milliseconds, "
+				+ "including while SteelSeries Engine is unreachable. Later it is dropped.");
+
+		this.batchEvents = this.config.getBoolean("batchEvents", CATEGORY_DISPATCH, true,
+				"Combine the events of one tick into a single /multiple_game_events request when SteelSeries Engine supports it.");
+		this.maxBatchSize = this.config.getInt("maxBatchSize", CATEGORY_DISPATCH, 32, 1, 1024,
+				"Maximum number of events sent in one /multiple_game_events request.");
+
+		this.minSampleIntervalTicks = this.config.getInt("minSampleIntervalTicks", CATEGORY_DISPATCH, 1, 1, 20,
+				"Shortest time between two samples of the player, and flushes of their events, in client ticks of 50ms. "
+				+ "Sampling speeds up towards this while things change, e.g. when taking damage.");
+		this.maxSampleIntervalTicks = this.config.getInt("maxSampleIntervalTicks", CATEGORY_DISPATCH, 10, 1, 100,
+				"Longest time between two samples of the player, in client ticks. Sampling slows down towards this while "
+				+ "nothing changes, or while SteelSeries Engine is slow or has events queued up.");
+		this.slowRoundTripMs = this.config.getInt("slowRoundTripMs", CATEGORY_DISPATCH, 50, 1, 5000,
+				"Recent round trip time to SteelSeries Engine, in milliseconds, above which sampling slows down.");
+		this.heartbeatIntervalMs = this.config.getInt("heartbeatIntervalMs", CATEGORY_DISPATCH, 5000, 0, 60000,
+				"Send a /game_heartbeat when no event has been sent for this long while in a world, in milliseconds. "
+				+ "Keep it below SteelSeries Engine's 15 second game timeout. 0 disables heartbeats.");
+		this.eventLimits = this.config.getStringList("eventLimits", CATEGORY_DISPATCH, DEFAULT_EVENT_LIMITS,
+				"Limits for noisy events, one per line as NAME=maxHz,deadband. maxHz caps how often the event is sent per second, "
+				+ "deadband how far a number must move from the last sent value before it is sent again. 0 means no limit. "
+				+ "Held back values are still sent once the limit allows.");
+		this.deadbandSettleMs = this.config.getInt("deadbandSettleMs", CATEGORY_DISPATCH, 500, 0, 60000,
+				"A value inside the deadband is still sent once it hasn't changed for this long, in milliseconds.");
+		this.eventProfilePollMs = this.config.getInt("eventProfilePollMs", CATEGORY_DISPATCH, 1000, 0, 60000,
+				"How often to check gamesense-events.json, which turns events on and off and sets their maxHz, deadband and "
+				+ "priority, for changes, in milliseconds. Changes apply without restarting the game. 0 disables the check.");
+
+		this.connectTimeoutMs = this.config.getInt("connectTimeoutMs", CATEGORY_ENGINE, 100, 1, 10000,
+				"How long to wait when connecting to SteelSeries Engine, in milliseconds.");
+		this.responseTimeoutMs = this.config.getInt("responseTimeoutMs", CATEGORY_ENGINE, 1000, 10, 60000,
+				"How long SteelSeries Engine may take to answer a request before the connection is reset, in milliseconds.");
+		this.failureThreshold = this.config.getInt("failureThreshold", CATEGORY_ENGINE, 3, 1, 100,
+				"Consecutive failed requests after which events are no longer sent until SteelSeries Engine answers a probe again.");
+		this.backoffBaseMs = this.config.getInt("backoffBaseMs", CATEGORY_ENGINE, 1000, 10, 600000,
+				"Wait before the first probe after SteelSeries Engine became unreachable, in milliseconds. Doubles after every failed probe.");
+		this.backoffMaxMs = this.config.getInt("backoffMaxMs", CATEGORY_ENGINE, 60000, 10, 3600000,
+				"Longest wait between probes while SteelSeries Engine is unreachable, in milliseconds.");
+		this.corePropsPath = this.config.getString("corePropsPath", CATEGORY_ENGINE, "",
+				"Path of SteelSeries Engine's coreProps.json. Empty uses the default location for this platform.");
+		this.engineAddress = this.config.getString("engineAddress", CATEGORY_ENGINE, "",
+				"host:port to send events to instead of the address in coreProps.json, e.g. for SteelSeries Engine on another machine.");
+		this.discoveryPollMs = this.config.getInt("discoveryPollMs", CATEGORY_ENGINE, 1000, 0, 60000,
+				"How often to check coreProps.json for a new SteelSeries Engine address, in milliseconds. 0 disables the check.");
+		this.metricsJmx = this.config.getBoolean("metricsJmx", CATEGORY_DISPATCH, true,
+				"Publish GameSense counters and latencies through JMX, under com.sse3.gamesense.");
+
+		this.recordEvents = this.config.getBoolean("recordEvents", CATEGORY_DISPATCH, false,
+				"Record every game event sent, with its timing, to a new file in gamesense-recordings from startup on, "
+				+ "for replaying with EventReplay. /gamesense record and /gamesense stop do the same for one session.");
+
+		this.legacyToolEvents = this.config.getBoolean("legacyToolEvents", CATEGORY_DISPATCH, false,
+				"Send the held tool as the separate TOOL, TOOLMATERIAL, TOOLDURABILITY and SHOWTOOL events, for handlers written "
+				+ "for older versions of the mod, instead of one TOOL event carrying type, material and durability in its frame.");
+		this.oledMinimap = this.config.getBoolean("oledMinimap", CATEGORY_DISPATCH, false,
+				"Show a map of the surroundings and a compass on devices with a 128x36 OLED screen. Off by default, since it "
+				+ "takes the screen over and costs a frame render every few ticks.");
+		this.oledMaxFps = this.config.getInt("oledMaxFps", CATEGORY_DISPATCH, 5, 1, 10,
+				"Most OLED map frames sent per second. Frames that look the same as the last one are never sent.");
+		this.keyboardLighting = this.config.getBoolean("keyboardLighting", CATEGORY_DISPATCH, false,
+				"Light the whole keyboard on per-key RGB keyboards by health, air under water and damage taken, "
+				+ "behind the keys of the HEALTH, HUNGERLEVEL, AIRLEVEL and TOOL events. Off by default, since it replaces "
+				+ "the keyboard's own lighting.");
+		this.keyboardMaxFps = this.config.getInt("keyboardMaxFps", CATEGORY_DISPATCH, 10, 1, 10,
+				"Most keyboard lighting frames sent per second. Frames with the same colours as the last one are never sent.");
+
+		if (this.config.hasChanged()) {
+			this.config.save();
+		}
+	}
+}
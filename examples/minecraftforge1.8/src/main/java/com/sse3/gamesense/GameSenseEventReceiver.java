@@ -1,19 +1,18 @@
 package com.sse3.gamesense;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import org.json.JSONArray;
+import org.json.JSONTokener;
+
 import net.minecraft.client.Minecraft;
-import net.minecraft.client.entity.EntityPlayerSP;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.item.Item;
-import net.minecraft.item.ItemAxe;
-import net.minecraft.item.ItemHoe;
-import net.minecraft.item.ItemPickaxe;
-import net.minecraft.item.ItemSpade;
 import net.minecraft.item.ItemStack;
-import net.minecraft.item.ItemSword;
-import net.minecraft.item.ItemTool;
 import net.minecraft.util.EnumFacing;
 import net.minecraftforge.event.entity.EntityEvent.EntityConstructing;
-import net.minecraftforge.event.entity.living.LivingEvent.LivingUpdateEvent;
 import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.client.event.RenderGameOverlayEvent;
@@ -24,175 +23,299 @@ import net.minecraftforge.fml.common.eventhandler.EventPriority;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.fml.common.gameevent.PlayerEvent.PlayerLoggedInEvent;
 import net.minecraftforge.fml.common.gameevent.PlayerEvent.PlayerLoggedOutEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
 
 public class GameSenseEventReceiver {
 
-	private float lastHealth = 0;
-	private int lastFoodLevel = 0;
-	private boolean isHungry = false;
+	// FACING values, by EnumFacing ordinal.
+	private static final String[] FACING_NAMES;
+	static {
+		EnumFacing[] facings = EnumFacing.values();
+		FACING_NAMES = new String[facings.length];
+		for (int i = 0; i < facings.length; i++) {
+			FACING_NAMES[i] = facings[i].toString().toUpperCase();
+		}
+	}
+
 	private boolean isStarted = false;
 	private Minecraft _mcInst;
-	private long lastTickMS = 0;
-	private long timeOfDay = 0;
-	private int lastAir = 0;
-	private EnumFacing lastFacing = EnumFacing.NORTH;
-	private ItemStack lastHeldItem = null;
+	private int ticksUntilSample = 0;
+	// How many ticks apart samples are, from how busy the player and Engine are.
+	private final SampleScheduler scheduler;
 	private GameSenseMod gsmInst = null;
+	private final int startEvent;
+	private final int finishEvent;
+	// Either one TOOL event with type, material and durability in its frame, or the
+	// legacy separate events (the others are -1 then).
+	private final boolean legacyToolEvents;
+	private final int toolEvent;
+	private final int toolMaterialEvent;
+	private final int toolDurabilityEvent;
+	private final int showToolEvent;
+	// Everything we tell Engine about the player.
+	private final ProbeTable probes;
+	// The OLED map, or null if disabled.
+	private final BitmapStream minimap;
+	private final MinimapRenderer minimapRenderer = new MinimapRenderer();
+	// The keyboard lighting, or null if disabled.
+	private final LightingStream lighting;
+	private final LightingRenderer lightingRenderer = new LightingRenderer();
 
 	public GameSenseEventReceiver(Minecraft mcInst) {
 		this._mcInst = mcInst;
 		this.gsmInst = GameSenseMod.instance;
-		lastTickMS = System.currentTimeMillis();
+
+		this.startEvent = this.gsmInst.RegisterGameEvent("START");
+		this.finishEvent = this.gsmInst.RegisterGameEvent("FINISH");
+		// Engine has to hear about these even when a burst of other events is waiting.
+		this.gsmInst.SetEventPriority(this.startEvent, DispatchPriority.CRITICAL);
+		this.gsmInst.SetEventPriority(this.finishEvent, DispatchPriority.CRITICAL);
+		// Said once when it happens; resending either after a reconnect would be wrong.
+		this.gsmInst.SetEventResync(this.startEvent, false);
+		this.gsmInst.SetEventResync(this.finishEvent, false);
+		GameSenseConfig config = this.gsmInst.getConfig();
+		this.scheduler = new SampleScheduler(this.gsmInst.GetMetrics(), config.minSampleIntervalTicks,
+				config.maxSampleIntervalTicks, config.slowRoundTripMs);
+		this.legacyToolEvents = config.legacyToolEvents;
+		if (this.legacyToolEvents) {
+			this.toolEvent = this.gsmInst.RegisterGameEvent("TOOL");
+			this.toolMaterialEvent = this.gsmInst.RegisterGameEvent("TOOLMATERIAL");
+			this.toolDurabilityEvent = this.gsmInst.RegisterGameEvent("TOOLDURABILITY", 0, 100, GameSenseMod.ICON_TOOL);
+			this.showToolEvent = this.gsmInst.RegisterGameEvent("SHOWTOOL");
+		} else {
+			// The value is the durability; the handlers show the frame on screened devices.
+			this.toolEvent = this.gsmInst.BindGameEvent("TOOL", 0, 100, GameSenseMod.ICON_TOOL,
+					loadHandlers("/assets/gamesense/handlers/TOOL.json"));
+			// Two tools can have the same durability, and then only the frame changed.
+			this.gsmInst.SetValueOptional(this.toolEvent, true);
+			this.toolMaterialEvent = -1;
+			this.toolDurabilityEvent = -1;
+			this.showToolEvent = -1;
+		}
+		this.probes = createProbes(this.gsmInst);
+		this.minimap = config.oledMinimap ? new BitmapStream(this.gsmInst, "MINIMAP", 128, 36, config.oledMaxFps) : null;
+		this.lighting = config.keyboardLighting
+				? new LightingStream(this.gsmInst, "LIGHTING", config.keyboardMaxFps, "HEALTH", "HUNGERLEVEL", "AIRLEVEL", "TOOL")
+				: null;
 
 		this.reset();
 	}
 
 	public void reset() {
 		// Reset our data
-		this.lastHealth = 0;
-		this.lastFoodLevel = 0;
-		this.isHungry = false;
 		this.isStarted = false;
-		this.lastTickMS = 0;
-		this.timeOfDay = 0;
-		this.lastAir = 0;
-		this.lastFacing = EnumFacing.NORTH;
-		this.lastHeldItem = null;
+		this.ticksUntilSample = 0;
+		this.scheduler.reset();
+		this.probes.reset();
+		if (this.minimap != null) {
+			this.minimap.reset();
+		}
+		if (this.lighting != null) {
+			this.lighting.reset();
+		}
 	}
 
-	@SubscribeEvent(priority = EventPriority.NORMAL)
-	public void onLivingUpdate(LivingUpdateEvent event) {
-		if (!this.isStarted)
-			return;
-		
-		long curElapsed = System.currentTimeMillis() - this.lastTickMS;
-		// Update threshold. Periodically update all values at this rate, in milliseconds
-		long updateThreshold = 1000;
-		boolean doPeriodicUpdate = false;
-
-		// Min time between potential updates: 100ms.
-		if (curElapsed > 100 && (event.entity instanceof EntityPlayerSP)) {
-
-			if(curElapsed > updateThreshold) {
-				doPeriodicUpdate = true;
-				this.lastTickMS = System.currentTimeMillis();
+	private static JSONArray loadHandlers(String resource) {
+		InputStream in = GameSenseEventReceiver.class.getResourceAsStream(resource);
+		if (in == null) {
+			throw new IllegalStateException("Missing " + resource);
+		}
+		try {
+			return new JSONArray(new JSONTokener(new InputStreamReader(in, "UTF-8")));
+		} catch (IOException e) {
+			throw new IllegalStateException("Couldn't read " + resource, e);
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
 			}
-			
-			EntityPlayer player = (EntityPlayer) event.entity;
-
-			if (doPeriodicUpdate || player.getHealth() != this.lastHealth) {
-				this.lastHealth = player.getHealth();
-				float maxHealth = player.getMaxHealth();
-				// Post health to sse3 socket
-				gsmInst.SendGameEvent("HEALTH", (100 * ((int) this.lastHealth) / ((int) maxHealth)), player);
+		}
+	}
+
+	private ProbeTable createProbes(GameSenseMod gsmInst) {
+		ProbeTable probes = new ProbeTable();
+
+		int healthEvent = gsmInst.RegisterGameEvent("HEALTH", 0, 100, GameSenseMod.ICON_HEALTH);
+		gsmInst.SetEventPriority(healthEvent, DispatchPriority.CRITICAL);
+		probes.add(new PlayerProbe(healthEvent) {
+			@Override
+			public long sample(EntityPlayer player) {
+				int maxHealth = (int) player.getMaxHealth();
+				return maxHealth > 0 ? 100 * ((int) player.getHealth()) / maxHealth : 0;
+			}
+
+			@Override
+			public void send(GameSenseMod mod, EntityPlayer player, long value) {
+				mod.SendGameEvent(this.handle, (int) value);
+			}
+		});
+
+		probes.add(new PlayerProbe(gsmInst.RegisterGameEvent("HUNGERLEVEL", 0, 100, GameSenseMod.ICON_HUNGER)) {
+			@Override
+			public long sample(EntityPlayer player) {
+				return player.getFoodStats().getFoodLevel();
+			}
+
+			@Override
+			public void send(GameSenseMod mod, EntityPlayer player, long value) {
+				mod.SendGameEvent(this.handle, (int) value * 5);
 			}
+		});
 
-			if (doPeriodicUpdate || player.getFoodStats().getFoodLevel() != this.lastFoodLevel) {
-				this.lastFoodLevel = this._mcInst.thePlayer.getFoodStats().getFoodLevel();
-				gsmInst.SendGameEvent("HUNGERLEVEL", this.lastFoodLevel * 5, player);
+		probes.add(new PlayerProbe(gsmInst.RegisterGameEvent("HUNGRY", 0, 1, GameSenseMod.ICON_HUNGER)) {
+			@Override
+			public long sample(EntityPlayer player) {
+				return player.getFoodStats().needFood() ? 1 : 0;
 			}
 
-			if (doPeriodicUpdate || player.getFoodStats().needFood() != this.isHungry) {
-				this.isHungry = player.getFoodStats().needFood();
-				gsmInst.SendGameEvent("HUNGRY", this.isHungry, player);
+			@Override
+			public void send(GameSenseMod mod, EntityPlayer player, long value) {
+				mod.SendGameEvent(this.handle, value != 0);
 			}
+		});
 
-			if (doPeriodicUpdate || player.getAir() != this.lastAir) {
-				this.lastAir = player.getAir();
-				gsmInst.SendGameEvent("AIRLEVEL", (int)(this.lastAir / 3), player);
+		probes.add(new PlayerProbe(gsmInst.RegisterGameEvent("AIRLEVEL", 0, 100, GameSenseMod.ICON_AIR)) {
+			@Override
+			public long sample(EntityPlayer player) {
+				return player.getAir();
 			}
 
-			// Compass direction facing
-			if (doPeriodicUpdate || player.getHorizontalFacing() != this.lastFacing) {
-				this.lastFacing = player.getHorizontalFacing();
-				gsmInst.SendGameEvent("FACING", this.lastFacing.toString().toUpperCase(), player);
+			@Override
+			public void send(GameSenseMod mod, EntityPlayer player, long value) {
+				mod.SendGameEvent(this.handle, (int) (value / 3));
 			}
+		});
 
-			if (doPeriodicUpdate || player.getHeldItem() != this.lastHeldItem) {
-
-				this.lastHeldItem = player.getHeldItem();
-
-				// Double check the currentHeldItem is valid.
-				if (this.lastHeldItem != null) {
-
-					// Check if player is holding a tool, if so, send game event
-					// of what type of tool, material class, and durability
-					Item heldItem = this.lastHeldItem.getItem();
-					int heldItemDurability = 100 - (int) (heldItem.getDurabilityForDisplay(this.lastHeldItem) * 100);
-					String heldItemMaterialName = "";
-					String heldItemType = "";
-
-					String heldItemClassName = heldItem.getClass().getSimpleName();
-					switch (heldItemClassName) {
-						case "ItemAxe": {
-							heldItemMaterialName = ((ItemTool) heldItem).getToolMaterialName();
-							heldItemType = "AXE";
-							break;
-						}
-						case "ItemSpade": {
-							heldItemMaterialName = ((ItemTool) heldItem).getToolMaterialName();
-							heldItemType = "SHOVEL";
-							break;
-						}
-						case "ItemPickaxe": {
-							heldItemMaterialName = ((ItemTool) heldItem).getToolMaterialName();
-							heldItemType = "PICKAXE";
-							break;
-						}
-						case "ItemHoe": {
-							heldItemMaterialName = ((ItemHoe) heldItem).getMaterialName();
-							heldItemType = "HOE";
-							break;
-						}
-						case "ItemSword": {
-							heldItemMaterialName = ((ItemSword) heldItem).getToolMaterialName();
-							heldItemType = "SWORD";
-							break;
-						}
-						case "ItemShears": {
-							// Shears are always IRON
-							heldItemMaterialName = "IRON";
-							heldItemType = "SHEARS";
-							break;
-						}
-					// TODO: Add more held items to send game events for
-					}
-
-					if (heldItemType != "") {
-						gsmInst.SendGameEvent("TOOL", heldItemType, player);
-						gsmInst.SendGameEvent("TOOLMATERIAL", heldItemMaterialName, player);
-						gsmInst.SendGameEvent("TOOLDURABILITY", heldItemDurability, player);
-						gsmInst.SendGameEvent("SHOWTOOL", 1, player);
-					} else {
-						gsmInst.SendGameEvent("TOOL", "NONE", player);
-						gsmInst.SendGameEvent("TOOLDURABILITY", 0, player);
-						gsmInst.SendGameEvent("SHOWTOOL", 1, player);
-					}
-				} else {
-					gsmInst.SendGameEvent("TOOL", "NONE", player);
-					gsmInst.SendGameEvent("TOOLDURABILITY", 0, player);
-					gsmInst.SendGameEvent("SHOWTOOL", 1, player);
+		// Compass direction facing
+		probes.add(new PlayerProbe(gsmInst.RegisterGameEvent("FACING")) {
+			@Override
+			public long sample(EntityPlayer player) {
+				return player.getHorizontalFacing().ordinal();
+			}
+
+			@Override
+			public void send(GameSenseMod mod, EntityPlayer player, long value) {
+				mod.SendGameEvent(this.handle, FACING_NAMES[(int) value]);
+			}
+		});
+
+		// The held item by value (item id and damage, which in 1.8 is also its metadata), so wear
+		// shows up as a change too but a resync of the same stack does not.
+		probes.add(new PlayerProbe(this.toolEvent) {
+			@Override
+			public long sample(EntityPlayer player) {
+				ItemStack stack = player.getHeldItem();
+				if (stack == null) {
+					return -1;
 				}
+				return ((long) Item.getIdFromItem(stack.getItem()) << 32) | (stack.getItemDamage() & 0xffffffffL);
+			}
+
+			@Override
+			public void send(GameSenseMod mod, EntityPlayer player, long value) {
+				sendHeldItem(mod, player.getHeldItem());
 			}
+		});
+
+		return probes;
+	}
+
+	private void sendHeldItem(GameSenseMod gsmInst, ItemStack heldItemStack) {
+		// Check if player is holding a tool, if so, send game event
+		// of what type of tool, material class, and durability
+		ToolDescriptor tool = heldItemStack != null ? gsmInst.getTools().get(heldItemStack.getItem()) : ToolDescriptor.NONE;
+		int heldItemDurability = 0;
+		if (tool.isTool()) {
+			heldItemDurability = 100 - (int) (heldItemStack.getItem().getDurabilityForDisplay(heldItemStack) * 100);
+		}
+
+		if (!this.legacyToolEvents) {
+			// Everything in one request.
+			EventFrame frame = gsmInst.GetFrame(this.toolEvent);
+			frame.putEncoded("type", tool.encodedType);
+			frame.putEncoded("material", tool.encodedMaterial);
+			frame.put("durability", heldItemDurability);
+			gsmInst.SendGameEvent(this.toolEvent, heldItemDurability);
+		} else if (tool.isTool()) {
+			gsmInst.SendGameEvent(this.toolEvent, tool.type);
+			gsmInst.SendGameEvent(this.toolMaterialEvent, tool.material);
+			gsmInst.SendGameEvent(this.toolDurabilityEvent, heldItemDurability);
+			gsmInst.SendGameEvent(this.showToolEvent, 1);
+		} else {
+			gsmInst.SendGameEvent(this.toolEvent, "NONE");
+			gsmInst.SendGameEvent(this.toolDurabilityEvent, 0);
+			gsmInst.SendGameEvent(this.showToolEvent, 1);
+		}
+	}
+
+	// Once per client tick no matter how many entities are loaded, unlike LivingUpdateEvent.
+	// Registered on the FML bus.
+	@SubscribeEvent(priority = EventPriority.NORMAL)
+	public void onClientTick(TickEvent.ClientTickEvent event) {
+		if (!this.isStarted || event.phase != TickEvent.Phase.END)
+			return;
+
+		if (--this.ticksUntilSample <= 0 && this._mcInst.thePlayer != null && this._mcInst.theWorld != null) {
+			EntityPlayer player = this._mcInst.thePlayer;
+			// Left over from earlier samples, i.e. Engine is falling behind.
+			int backlog = gsmInst.GetMetrics().getQueueDepth();
 
-			if (doPeriodicUpdate || this._mcInst.theWorld.getWorldTime() != this.timeOfDay) {
-				this.timeOfDay = this._mcInst.theWorld.getWorldTime();
-				//sse3Inst.SendGameEvent("TIMEOFDAY", (int)(this.timeOfDay), player);
+			// Everything is sent once after joining a world, then only changes. Engine is kept
+			// from timing us out by heartbeats, and GameSenseMod resends the latest values itself
+			// if it has to reconnect.
+			TraceEvents.Sample trace = TraceEvents.beginSample();
+			long sampleStart = System.nanoTime();
+			int sent = this.probes.update(gsmInst, player);
+			if (this.minimap != null && this.minimap.isDue(sampleStart)) {
+				this.minimapRenderer.render(this.minimap.getBitmap(), player);
+				this.minimap.send(sampleStart);
+			}
+			if (this.lighting != null && this.lighting.isDue(sampleStart)) {
+				this.lightingRenderer.render(this.lighting.getBitmap(), player);
+				this.lighting.send(sampleStart);
 			}
+
+			// Everything sent above goes out in one request.
+			gsmInst.FlushGameEvents(sampleStart);
+			TraceEvents.endSample(trace, this.probes.size(), sent);
+			// Taking damage is when feedback has to be quickest.
+			this.ticksUntilSample = this.scheduler.next(sent, player.hurtTime > 0, backlog);
+		}
+	}
+
+	// A GameSense line on the F3 screen.
+	@SubscribeEvent(priority = EventPriority.NORMAL)
+	public void onRenderDebugText(RenderGameOverlayEvent.Text event) {
+		if (this._mcInst.gameSettings.showDebugInfo) {
+			event.left.add(gsmInst.GetMetrics().getSummary() + ", sample every " + this.scheduler.getIntervalTicks() + " ticks");
 		}
 	}
 
 	@SubscribeEvent(priority = EventPriority.NORMAL)
 	public void onWorldLoad(WorldEvent.Load event) {
+		// In single player the integrated server's worlds load and unload here too, on
+		// its thread; only the client's world is the game starting or finishing.
+		if (!event.world.isRemote) {
+			return;
+		}
 		// Just send START event
-		gsmInst.SendGameEvent("START", 1, null);
+		gsmInst.SendGameEvent(this.startEvent, 1);
+		gsmInst.FlushGameEvents();
+		gsmInst.SetGameActive(true);
 		this.isStarted = true;
 	}
 
 	@SubscribeEvent(priority = EventPriority.NORMAL)
 	public void onWorldUnload(WorldEvent.Unload event) {
-		// Just send FINISH event
-		gsmInst.SendGameEvent("FINISH", 1, null);
+		if (!event.world.isRemote) {
+			return;
+		}
+		// Just send FINISH event. Being critical it goes out ahead of anything still
+		// queued, or is given up on criticalDeadlineMs from now; the flush only wakes
+		// the sender, so unloading never waits for Engine.
+		gsmInst.SendGameEvent(this.finishEvent, 1);
+		gsmInst.FlushGameEvents();
+		gsmInst.SetGameActive(false);
 		this.reset();
 	}
 }
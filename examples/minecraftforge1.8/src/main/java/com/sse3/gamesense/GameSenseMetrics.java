@@ -0,0 +1,294 @@
+package com.sse3.gamesense;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// What the GameSense client has been doing: per-event counters (see EventMetrics),
+// how long the game thread spends producing events, Engine's round trip time, and the
+// queue depth. Available through JMX under com.sse3.gamesense, the F3 screen and the
+// /gamesense command.
+//
+// Counting is allocation free: the per-event counters are found by handle, and
+// the sender thread remembers which events each in-flight request carries in
+// primitive rings so that acknowledgements can be attributed to events.
+public class GameSenseMetrics implements GameSenseMetricsMBean {
+	private static final String DOMAIN = "com.sse3.gamesense";
+
+	public final LatencyHistogram gameThreadNanos = new LatencyHistogram();
+	public final LatencyHistogram roundTripNanos = new LatencyHistogram();
+
+	private volatile EventMetrics[] byHandle = new EventMetrics[0];
+	private volatile EventDispatcher dispatcher = null;
+	private MBeanServer mbeanServer = null;
+
+	// Sender thread only: for every posted request, oldest first, how many events it
+	// carried, and their handles.
+	private int[] requestSizes = new int[64];
+	private int requestHead = 0;
+	private int requestCount = 0;
+	private int[] requestHandles = new int[256];
+	private int handleHead = 0;
+	private int handleCount = 0;
+	private volatile int inFlightRequests = 0;
+	// Written by the sender thread only.
+	private volatile long recentRoundTripNanos = 0;
+
+	public void setDispatcher(EventDispatcher dispatcher) {
+		this.dispatcher = dispatcher;
+	}
+
+	// Registers this and every event's counters with the platform MBean server.
+	public synchronized void registerMBeans() {
+		try {
+			this.mbeanServer = ManagementFactory.getPlatformMBeanServer();
+			this.mbeanServer.registerMBean(this, new ObjectName(DOMAIN + ":type=Metrics"));
+			for (EventMetrics metrics : this.byHandle) {
+				if (metrics != null) {
+					registerMBean(metrics);
+				}
+			}
+		} catch (JMException e) {
+			System.out.println("Couldn't register GameSense metrics with JMX: " + e);
+			this.mbeanServer = null;
+		}
+	}
+
+	public EventMetrics forEvent(GameEvent event) {
+		EventMetrics[] byHandle = this.byHandle;
+		EventMetrics metrics = event.handle < byHandle.length ? byHandle[event.handle] : null;
+		return metrics != null ? metrics : create(event);
+	}
+
+	private synchronized EventMetrics create(GameEvent event) {
+		EventMetrics[] byHandle = this.byHandle;
+		if (event.handle < byHandle.length && byHandle[event.handle] != null) {
+			return byHandle[event.handle];
+		}
+		byHandle = Arrays.copyOf(byHandle, Math.max(byHandle.length, event.handle + 1));
+		EventMetrics metrics = new EventMetrics(event.name);
+		byHandle[event.handle] = metrics;
+		this.byHandle = byHandle;
+		if (this.mbeanServer != null) {
+			registerMBean(metrics);
+		}
+		return metrics;
+	}
+
+	private void registerMBean(EventMetrics metrics) {
+		try {
+			this.mbeanServer.registerMBean(metrics, new ObjectName(DOMAIN + ":type=Event,name=" + ObjectName.quote(metrics.getName())));
+		} catch (JMException e) {
+			System.out.println("Couldn't register GameSense metrics for " + metrics.getName() + " with JMX: " + e);
+		}
+	}
+
+	public void enqueued(GameEvent event) {
+		forEvent(event).enqueued.increment();
+	}
+
+	public void coalesced(GameEvent event) {
+		forEvent(event).coalesced.increment();
+	}
+
+	public void dropped(GameEvent event) {
+		forEvent(event).dropped.increment();
+	}
+
+	// Sender thread: a request carrying events[from..to) was posted. events may be null
+	// for requests that carry no events. Every posted request must be followed by
+	// exactly one requestCompleted(), in the same order.
+	public void requestPosted(List<GameEvent> events, int from, int to) {
+		int size = events == null ? 0 : to - from;
+		if (this.requestCount == this.requestSizes.length) {
+			this.requestSizes = grow(this.requestSizes, this.requestHead, this.requestCount);
+			this.requestHead = 0;
+		}
+		this.requestSizes[(this.requestHead + this.requestCount) % this.requestSizes.length] = size;
+		this.requestCount++;
+
+		while (this.handleCount + size > this.requestHandles.length) {
+			this.requestHandles = grow(this.requestHandles, this.handleHead, this.handleCount);
+			this.handleHead = 0;
+		}
+		for (int i = from; i < from + size; i++) {
+			this.requestHandles[(this.handleHead + this.handleCount) % this.requestHandles.length] = events.get(i).handle;
+			this.handleCount++;
+		}
+		this.inFlightRequests = this.requestCount;
+	}
+
+	// Sender thread: a request was answered after this long.
+	public void roundTripCompleted(long nanos) {
+		this.roundTripNanos.record(nanos);
+		long recent = this.recentRoundTripNanos;
+		// Exponentially weighted, so roughly the last eight answers count.
+		this.recentRoundTripNanos = recent == 0 ? nanos : recent + (nanos - recent) / 8;
+	}
+
+	// Unlike the percentiles, follows Engine getting slower or faster within seconds.
+	public long getRecentRoundTripNanos() {
+		return this.recentRoundTripNanos;
+	}
+
+	// Sender thread: the oldest posted request was answered (success) or lost or refused.
+	public void requestCompleted(boolean success) {
+		if (this.requestCount == 0) {
+			return;
+		}
+		int size = this.requestSizes[this.requestHead];
+		this.requestHead = (this.requestHead + 1) % this.requestSizes.length;
+		this.requestCount--;
+		this.inFlightRequests = this.requestCount;
+
+		EventMetrics[] byHandle = this.byHandle;
+		for (int i = 0; i < size; i++) {
+			int handle = this.requestHandles[this.handleHead];
+			this.handleHead = (this.handleHead + 1) % this.requestHandles.length;
+			this.handleCount--;
+			EventMetrics metrics = handle < byHandle.length ? byHandle[handle] : null;
+			if (metrics != null) {
+				(success ? metrics.sent : metrics.failed).increment();
+			}
+		}
+	}
+
+	private static int[] grow(int[] ring, int head, int count) {
+		int[] grown = new int[ring.length * 2];
+		for (int i = 0; i < count; i++) {
+			grown[i] = ring[(head + i) % ring.length];
+		}
+		return grown;
+	}
+
+	// Counters of every event seen so far, in handle order.
+	public EventMetrics[] getEvents() {
+		EventMetrics[] byHandle = this.byHandle;
+		int count = 0;
+		for (EventMetrics metrics : byHandle) {
+			if (metrics != null) {
+				count++;
+			}
+		}
+		EventMetrics[] events = new EventMetrics[count];
+		count = 0;
+		for (EventMetrics metrics : byHandle) {
+			if (metrics != null) {
+				events[count++] = metrics;
+			}
+		}
+		return events;
+	}
+
+	// One line for the F3 screen.
+	public String getSummary() {
+		return String.format("GameSense: sent %d, dropped %d, failed %d, queue %d, rtt p50 %.1fms p99 %.1fms, tick p99 %.0fus",
+				getSent(), getDropped(), getFailed(), getQueueDepth(), getRoundTripP50Micros() / 1000,
+				getRoundTripP99Micros() / 1000, getGameThreadP99Micros());
+	}
+
+	@Override
+	public long getEnqueued() {
+		long total = 0;
+		for (EventMetrics metrics : this.byHandle) {
+			total += metrics == null ? 0 : metrics.getEnqueued();
+		}
+		return total;
+	}
+
+	@Override
+	public long getCoalesced() {
+		long total = 0;
+		for (EventMetrics metrics : this.byHandle) {
+			total += metrics == null ? 0 : metrics.getCoalesced();
+		}
+		return total;
+	}
+
+	@Override
+	public long getDropped() {
+		long total = 0;
+		for (EventMetrics metrics : this.byHandle) {
+			total += metrics == null ? 0 : metrics.getDropped();
+		}
+		return total;
+	}
+
+	@Override
+	public long getSent() {
+		long total = 0;
+		for (EventMetrics metrics : this.byHandle) {
+			total += metrics == null ? 0 : metrics.getSent();
+		}
+		return total;
+	}
+
+	@Override
+	public long getFailed() {
+		long total = 0;
+		for (EventMetrics metrics : this.byHandle) {
+			total += metrics == null ? 0 : metrics.getFailed();
+		}
+		return total;
+	}
+
+	@Override
+	public int getQueueDepth() {
+		EventDispatcher dispatcher = this.dispatcher;
+		return dispatcher == null ? 0 : dispatcher.getQueueDepth();
+	}
+
+	@Override
+	public int getInFlightRequests() {
+		return this.inFlightRequests;
+	}
+
+	@Override
+	public long getGameThreadCount() {
+		return this.gameThreadNanos.getCount();
+	}
+
+	@Override
+	public double getGameThreadP50Micros() {
+		return this.gameThreadNanos.getPercentile(0.5) / 1000.0;
+	}
+
+	@Override
+	public double getGameThreadP99Micros() {
+		return this.gameThreadNanos.getPercentile(0.99) / 1000.0;
+	}
+
+	@Override
+	public double getGameThreadMaxMicros() {
+		return this.gameThreadNanos.getMax() / 1000.0;
+	}
+
+	@Override
+	public long getRoundTripCount() {
+		return this.roundTripNanos.getCount();
+	}
+
+	@Override
+	public double getRoundTripP50Micros() {
+		return this.roundTripNanos.getPercentile(0.5) / 1000.0;
+	}
+
+	@Override
+	public double getRoundTripP99Micros() {
+		return this.roundTripNanos.getPercentile(0.99) / 1000.0;
+	}
+
+	@Override
+	public double getRoundTripMaxMicros() {
+		return this.roundTripNanos.getMax() / 1000.0;
+	}
+
+	@Override
+	public double getRecentRoundTripMicros() {
+		return this.recentRoundTripNanos / 1000.0;
+	}
+}
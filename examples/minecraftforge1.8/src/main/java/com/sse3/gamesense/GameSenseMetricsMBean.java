@@ -0,0 +1,36 @@
+package com.sse3.gamesense;
+
+// JMX view of GameSenseMetrics. Per-event counters are separate EventMetrics beans.
+public interface GameSenseMetricsMBean {
+	long getEnqueued();
+
+	long getCoalesced();
+
+	long getDropped();
+
+	long getSent();
+
+	long getFailed();
+
+	int getQueueDepth();
+
+	int getInFlightRequests();
+
+	long getGameThreadCount();
+
+	double getGameThreadP50Micros();
+
+	double getGameThreadP99Micros();
+
+	double getGameThreadMaxMicros();
+
+	long getRoundTripCount();
+
+	double getRoundTripP50Micros();
+
+	double getRoundTripP99Micros();
+
+	double getRoundTripMaxMicros();
+
+	double getRecentRoundTripMicros();
+}
@@ -1,39 +1,30 @@
 package com.sse3.gamesense;
 
-import java.io.BufferedReader;
 import java.io.DataOutputStream;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
 import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.UnknownHostException;
 import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.List;
 
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.conn.ConnectTimeoutException;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.message.BasicHeader;
-import org.apache.http.params.HttpConnectionParams;
-import org.apache.http.protocol.HTTP;
+import org.json.JSONArray;
 import org.json.JSONObject;
-import org.json.JSONException;
 
 import net.minecraft.client.Minecraft;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.init.Blocks;
 import net.minecraft.util.ChatComponentText;
 import net.minecraft.util.IChatComponent;
+import net.minecraftforge.client.ClientCommandHandler;
 import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.fml.common.FMLCommonHandler;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.common.Mod.EventHandler;
 import net.minecraftforge.fml.common.Mod.Instance;
@@ -48,159 +39,757 @@ import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
 public class GameSenseMod {
     public static final String MODID = "gamesense";
     public static final String VERSION = "1.11";
+    public static final String GAME_NAME = "SSMCMOD";
+    
+    // Whether Engine accepts /multiple_game_events, probed once per session.
+    private static final int MULTIPLE_EVENTS_UNKNOWN = 0;
+    private static final int MULTIPLE_EVENTS_SUPPORTED = 1;
+    private static final int MULTIPLE_EVENTS_UNSUPPORTED = 2;
+    
+    // Request tags, so transport responses can be matched to what was sent.
+    private static final int TAG_GAME_EVENT = 0;
+    private static final int TAG_MULTIPLE_GAME_EVENTS = 1;
+    private static final int TAG_SUPPORTS_MULTIPLE_GAME_EVENTS = 2;
+    private static final int TAG_GAME_HEARTBEAT = 3;
+    private static final int TAG_HEALTH_PROBE = 4;
+    // Also used for /bind_game_event.
+    private static final int TAG_REGISTER_GAME_EVENT = 5;
+    
+    // How long the sender waits for the probe's answer before sending without it.
+    private static final long PROBE_WAIT_NANOS = 50000000L;
+    
+    // Icons Engine can show next to an event, for RegisterGameEvent.
+    public static final int ICON_NONE = 0;
+    public static final int ICON_HEALTH = 1;
+    public static final int ICON_ARMOR = 2;
+    public static final int ICON_AMMO = 3;
+    public static final int ICON_MONEY = 4;
+    public static final int ICON_EXPLOSION = 5;
+    public static final int ICON_KILLS = 6;
+    public static final int ICON_HEADSHOT = 7;
+    public static final int ICON_HELMET = 8;
+    public static final int ICON_HUNGER = 10;
+    public static final int ICON_AIR = 11;
+    public static final int ICON_COMPASS = 12;
+    public static final int ICON_TOOL = 13;
+    public static final int ICON_MANA = 14;
+    public static final int ICON_CLOCK = 15;
+    public static final int ICON_LIGHTNING = 16;
+    public static final int ICON_ITEM = 17;
     
 	// Tell Forge what instance to use.
 	@Instance(value = GameSenseMod.MODID)
 	public static GameSenseMod instance;
 
     //private HttpURLConnection sse3Connection = null;
-	private CloseableHttpClient sseClient = null;
-	private HttpPost ssePost = null; 
+	private EngineTransport transport = null;
     private String sse3Address = "";
-    private Boolean isConnected = false;
-    private long lastTick = 0;
+    private volatile int multipleEventsSupport = MULTIPLE_EVENTS_UNKNOWN;
+    private long lastProbeTick = 0;
+    private boolean hasConnected = false;
+    private HeartbeatScheduler heartbeat = null;
+    // Caps how often noisy events are sent, without losing their final value.
+    // Reconfigured when the event profile changes.
+    private EventThrottle throttle = null;
+    // Which events are sent and how, from gamesense-events.json; see EventProfile.
+    // Loaded on the sender thread and published here.
+    private volatile EventProfile profile = EventProfile.EMPTY;
+    private EventProfileFile profileFile = null;
+    // Watches coreProps.json, since Engine can come back on another port.
+    private EngineDiscovery discovery = null;
+    // Stops us from hammering (and queueing for) an Engine that isn't there.
+    private CircuitBreaker breaker = null;
+    private GameSenseConfig config = null;
+    // Counters and latencies, see GameSenseMetrics.
+    private final GameSenseMetrics metrics = new GameSenseMetrics();
+    // Every event by name and handle. Exists from the start so events can be registered early.
+    private final EventRegistry registry = new EventRegistry();
+    // Which held items are tools, for the TOOL events.
+    private final ToolRegistry tools = new ToolRegistry();
+    // Sender thread only: the registry's metadata version Engine last got, -1 for none.
+    private int registeredVersion = -1;
+    // Hands events to the sender thread so the client tick never waits on Engine.
+    private EventDispatcher dispatcher = null;
+    // Sender thread only: request bodies are encoded into this and posted from its buffer.
+    private final EventEncoder encoder = new EventEncoder(GAME_NAME);
+    // Sender thread only: the flight recorder event of every request in flight, oldest
+    // first, or NOT_TRACED for requests posted while nothing was recording.
+    private final ArrayDeque<Object> exchangeTraces = new ArrayDeque<Object>();
+    private static final Object NOT_TRACED = new Object();
+    // Sender thread only: requests posted and answered (or lost) so far. As answers come
+    // in posting order, the next one is for request number answeredRequests.
+    private long postedRequests = 0;
+    private long answeredRequests = 0;
+    // Sender thread only: CRITICAL events waiting for an answer, see settleCritical.
+    private int criticalInFlight = 0;
+    // Where recordings started by recordEvents or /gamesense record go.
+    private static final File RECORDING_DIR = new File("gamesense-recordings");
+    // Copies every sent event to a file while set, see StartRecording.
+    private volatile EventRecorder recorder = null;
+    
+    // Declares an event up front and returns the handle to send it with. The value range
+    // and icon are registered with Engine, and registered again whenever Engine restarts.
+    public int RegisterGameEvent(String eventName, int minValue, int maxValue, int iconId) {
+    	return registry.register(eventName, minValue, maxValue, iconId).getHandle();
+    }
+    
+    // Same, and binds handlers to the event (see doc/api/writing-handlers-in-json.md), so the
+    // mod doesn't depend on handlers having been set up in Engine some other way.
+    public int BindGameEvent(String eventName, int minValue, int maxValue, int iconId, JSONArray handlers) {
+    	return registry.bind(eventName, minValue, maxValue, iconId, handlers.toString()).getHandle();
+    }
+    
+    // An event Engine doesn't need to be told about beforehand, e.g. one with a string value.
+    public int RegisterGameEvent(String eventName) {
+    	return registry.register(eventName).getHandle();
+    }
+    
+    // Records every event sent to Engine from now on (value, frame and time, after
+    // throttling and conflation) to a new file in gamesense-recordings, for EventReplay.
+    // Stops any earlier recording.
+    public File StartRecording() throws IOException {
+    	RECORDING_DIR.mkdirs();
+    	EventRecorder started = new EventRecorder(EventRecorder.newFile(RECORDING_DIR), GAME_NAME);
+    	StopRecording();
+    	recorder = started;
+    	return started.getFile();
+    }
+    
+    // Returns the recording that was stopped, or null if there was none.
+    public EventRecorder StopRecording() {
+    	EventRecorder stopped = recorder;
+    	recorder = null;
+    	if(stopped != null) {
+    		try {
+    			stopped.close();
+    		} catch (IOException e) {
+    			e.printStackTrace();
+    		}
+    	}
+    	return stopped;
+    }
+    
+    // Lets other mods report their own items as tools in the TOOL events. Items the
+    // classifier returns null for are classified as before.
+    public void RegisterToolClassifier(ToolRegistry.Classifier classifier) {
+    	tools.register(classifier);
+    }
+    
+    // CRITICAL events (START and FINISH, say) are sent before any other queued event, are
+    // kept while Engine is unreachable and are retried a few times if sending fails, for
+    // up to criticalDeadlineMs after they were sent. Everything else is TELEMETRY, sent
+    // best effort. Set it before the event is first sent.
+    public void SetEventPriority(int handle, DispatchPriority priority) {
+    	registry.get(handle).setPriority(priority);
+    }
+    
+    // Engine skips an event's handlers when its value didn't change. Set this for events
+    // whose handlers show the frame rather than the value, so every send reaches them.
+    // Registered or bound events only.
+    public void SetValueOptional(int handle, boolean valueOptional) {
+    	registry.setValueOptional(registry.get(handle), valueOptional);
+    }
+    
+    // Whether the event's latest value is sent again when Engine has to be brought up to
+    // date, after a reconnect, an Engine restart or a lost request. On by default; turn
+    // it off for one-off events like START and FINISH, whose last value isn't state.
+    public void SetEventResync(int handle, boolean resync) {
+    	registry.get(handle).setResync(resync);
+    }
+    
+    // False while the event profile has the event turned off. Everything sent for it is
+    // then ignored, so check this to skip the work of producing its value.
+    public boolean IsEventEnabled(int handle) {
+    	return profile.isEnabled(registry.get(handle));
+    }
+    
+    ToolRegistry getTools() {
+    	return tools;
+    }
+    
+    GameSenseConfig getConfig() {
+    	return config;
+    }
+    
+    EventRegistry getRegistry() {
+    	return registry;
+    }
+    
+    // The frame sent along with the event's value, for handlers to read through
+    // context-frame-key. Keys put in it stay until overwritten, and go out with the
+    // event's next SendGameEvent or SendFrame. The same object is returned every time,
+    // so it can be filled in place each tick:
+    //   GetFrame(handle).put("x", x).put("biome", biome);
+    //   SendFrame(handle, y);
+    public EventFrame GetFrame(int handle) {
+    	return registry.get(handle).getFrame();
+    }
+    
+    // Like SendGameEvent, but does nothing at all when neither the value nor any frame
+    // key changed since the last send, so a display built from many fields only costs a
+    // request when it actually looks different. Returns whether the event was sent.
+    // Frame changes made while the event profile has it turned off go out once it is
+    // back on.
+    // Meant for events sent from one thread.
+    public boolean SendFrame(int handle, int value) {
+    	GameEvent event = registry.get(handle);
+    	if(!profile.isEnabled(event) || (!frameChanged(event) && event.hasInt(value))) {
+    		return false;
+    	}
+    	sendInt(event, value);
+    	return true;
+    }
+    
+    public boolean SendFrame(int handle, boolean value) {
+    	GameEvent event = registry.get(handle);
+    	if(!profile.isEnabled(event) || (!frameChanged(event) && event.hasBoolean(value))) {
+    		return false;
+    	}
+    	sendBoolean(event, value);
+    	return true;
+    }
+    
+    public boolean SendFrame(int handle, String value) {
+    	GameEvent event = registry.get(handle);
+    	if(!profile.isEnabled(event) || (!frameChanged(event) && event.hasString(value))) {
+    		return false;
+    	}
+    	sendString(event, value);
+    	return true;
+    }
+    
+    private static boolean frameChanged(GameEvent event) {
+    	return event.getFrame().takeChanged();
+    }
+    
+    // The SendGameEvent overloads only store the value in the event's GameEvent and
+    // queue it, so they don't allocate; encoding happens on the sender thread. The ones
+    // taking a handle from RegisterGameEvent also skip looking the name up. Events the
+    // event profile turned off return right away.
+    public void SendGameEvent(int handle, int value) {
+    	sendInt(registry.get(handle), value);
+    }
+    
+    public void SendGameEvent(int handle, boolean value) {
+    	sendBoolean(registry.get(handle), value);
+    }
+    
+    public void SendGameEvent(int handle, String value) {
+    	sendString(registry.get(handle), value);
+    }
     
     public void SendGameEvent(String eventName, int data, EntityPlayer player) {
-    	JSONObject eventData = new JSONObject();
-    	eventData.put("value", data);
-    	SendGameEvent(eventName, eventData, player);
+    	sendInt(registry.get(eventName), data);
     }
     
     public void SendGameEvent(String eventName, Boolean data, EntityPlayer player) {
-    	JSONObject eventData = new JSONObject();
-    	eventData.put("value", data);
-    	SendGameEvent(eventName, eventData, player);
+    	sendBoolean(registry.get(eventName), data != null && data.booleanValue());
     }
     
     public void SendGameEvent(String eventName, String data, EntityPlayer player) {
-    	JSONObject eventData = new JSONObject();
-    	eventData.put("value", data);
-    	SendGameEvent(eventName, eventData, player);
+    	sendString(registry.get(eventName), data);
     }
     
+    // dataObject is sent as the event's whole "data" object and must not be modified afterwards.
     public void SendGameEvent(String eventName, JSONObject dataObject, EntityPlayer player) {
-    	JSONObject event = new JSONObject();
-    	event.put("game", "SSMCMOD");
-    	event.put("event", eventName);
-    	event.put("data", dataObject.toString());
-    	//System.out.println("Sending " + event.toString());
-    	executePost(event.toString(), player);
+    	GameEvent event = registry.get(eventName);
+    	if(dispatcher != null && profile.isEnabled(event)) {
+    		TraceEvents.Enqueue trace = TraceEvents.beginEnqueue(event);
+    		event.setData(dataObject);
+    		if(throttle.admit(event)) {
+    			TraceEvents.endEnqueue(trace, queue(event));
+    		} else {
+    			TraceEvents.endEnqueue(trace, "throttled");
+    		}
+    	}
     }
     
-    private void executePost(String urlParameters, EntityPlayer player) {
-    	try {
+    private void sendInt(GameEvent event, int value) {
+    	if(dispatcher != null && profile.isEnabled(event)) {
+    		TraceEvents.Enqueue trace = TraceEvents.beginEnqueue(event);
+    		event.setInt(value);
+    		if(throttle.admitInt(event, value)) {
+    			TraceEvents.endEnqueue(trace, queue(event));
+    		} else {
+    			TraceEvents.endEnqueue(trace, "throttled");
+    		}
+    	}
+    }
+    
+    private void sendBoolean(GameEvent event, boolean value) {
+    	if(dispatcher != null && profile.isEnabled(event)) {
+    		TraceEvents.Enqueue trace = TraceEvents.beginEnqueue(event);
+    		event.setBoolean(value);
+    		if(throttle.admit(event)) {
+    			TraceEvents.endEnqueue(trace, queue(event));
+    		} else {
+    			TraceEvents.endEnqueue(trace, "throttled");
+    		}
+    	}
+    }
+    
+    private void sendString(GameEvent event, String value) {
+    	if(dispatcher != null && profile.isEnabled(event)) {
+    		TraceEvents.Enqueue trace = TraceEvents.beginEnqueue(event);
+    		event.setString(value);
+    		if(throttle.admit(event)) {
+    			TraceEvents.endEnqueue(trace, queue(event));
+    		} else {
+    			TraceEvents.endEnqueue(trace, "throttled");
+    		}
+    	}
+    }
+    
+    // While Engine is unreachable the value is only stored, which is nearly free; it goes
+    // out with the resync once Engine answers again. Critical events wait in their lane
+    // instead, until their deadline. Returns what happened to the event, for TraceEvents.
+    private String queue(GameEvent event) {
+    	if(breaker.isClosed() || event.isCritical()) {
+    		return dispatcher.enqueue(event) ? "queued" : "dropped";
+    	}
+    	metrics.dropped(event);
+    	return "circuit open";
+    }
+    
+    private final EventThrottle.Sink throttleSink = new EventThrottle.Sink() {
+    	@Override
+    	public void queue(GameEvent event) {
+    		if(!profile.isEnabled(event)) {
+    			// Held back before the event profile turned it off.
+    			return;
+    		}
+    		TraceEvents.Enqueue trace = TraceEvents.beginEnqueue(event);
+    		TraceEvents.endEnqueue(trace, GameSenseMod.this.queue(event));
+    	}
+    };
+    
+    // Sends everything queued by SendGameEvent since the last flush, as a single
+    // request if Engine supports it. Call once per tick after the last SendGameEvent.
+    public void FlushGameEvents() {
+    	flush(System.nanoTime());
+    }
+    
+    // Same, and records the time since tickStartNanos (a System.nanoTime() taken before
+    // the tick's first SendGameEvent) as time the game thread spent on GameSense.
+    public void FlushGameEvents(long tickStartNanos) {
+    	long now = System.nanoTime();
+    	metrics.gameThreadNanos.record(now - tickStartNanos);
+    	flush(now);
+    }
+    
+    private void flush(long nowNanos) {
+    	if(dispatcher != null) {
+    		// Also sends values the throttle held back and may let go of now.
+    		throttle.release(nowNanos, throttleSink);
+    		dispatcher.flush();
+    	}
+    }
+    
+    // Sender thread. Values the throttle was holding back go out now rather than never;
+    // the new limits apply from the next send on.
+    private void applyProfile(EventProfile reloaded) {
+    	profile = reloaded;
+    	throttle.reconfigure(reloaded.limitSpecs(config.eventLimits), throttleSink);
+    	System.out.println("Applied GameSense event profile " + profileFile.getFile());
+    }
+    
+    public GameSenseMetrics GetMetrics() {
+    	return metrics;
+    }
+    
+    // While the game is active (a world is loaded) a heartbeat keeps Engine from timing
+    // the game out when no event has changed for a while.
+    public void SetGameActive(boolean active) {
+    	if(heartbeat != null) {
+    		heartbeat.setActive(active);
+    	}
+    }
+    
+    // Only ever called from the dispatcher's sender thread.
+    private void sendBatch(List<GameEvent> batch) {
+    	// Before the events themselves, so Engine knows their range and icon.
+    	registerEvents();
+    	if(config.batchEvents && multipleEventsSupport == MULTIPLE_EVENTS_UNKNOWN) {
+    		probeMultipleEvents();
+    	}
+    	
+    	if(batch.size() > 1 && multipleEventsSupport == MULTIPLE_EVENTS_SUPPORTED) {
+    		TraceEvents.Encode trace = TraceEvents.beginEncode();
+    		encoder.beginEvents();
+    		for(int i = 0; i < batch.size(); i++) {
+    			encoder.addEvent(batch.get(i));
+    		}
+    		encoder.endEvents();
+    		TraceEvents.endEncode(trace, batch, 0, batch.size(), encoder.getLength());
     		
-    		// If we're not connected, retry after a certain amount of time has elapsed.
-    		if(!isConnected) {
-    			// Don't try to reconnect for another 5 seconds
-    			if(System.currentTimeMillis() - this.lastTick < 5000) {
-    				return;
+    		if(executePost("/multiple_game_events", TAG_MULTIPLE_GAME_EVENTS, batch, 0, batch.size())) {
+    			posted(batch, 0, batch.size());
+    		} else {
+    			unsent(batch, 0);
+    		}
+    		return;
+    	}
+    	
+    	for(int i = 0; i < batch.size(); i++) {
+    		TraceEvents.Encode trace = TraceEvents.beginEncode();
+    		encoder.encodeEvent(batch.get(i));
+    		TraceEvents.endEncode(trace, batch, i, i + 1, encoder.getLength());
+    		if(!executePost("/game_event", TAG_GAME_EVENT, batch, i, i + 1)) {
+    			unsent(batch, i);
+    			return;
+    		}
+    		posted(batch, i, i + 1);
+    	}
+    }
+    
+    // Recording happens here, on the sender thread, so the game thread only ever
+    // stores values; see EventRecorder.
+    private void posted(List<GameEvent> batch, int from, int to) {
+    	EventRecorder recorder = this.recorder;
+    	if(recorder == null) {
+    		return;
+    	}
+    	for(int i = from; i < to; i++) {
+    		recorder.record(batch.get(i));
+    	}
+    }
+    
+    private void unsent(List<GameEvent> batch, int from) {
+    	for(int i = from; i < batch.size(); i++) {
+    		retry(batch.get(i));
+    	}
+    }
+    
+    // The event still holds its latest value, so it simply goes back in the queue.
+    // Telemetry stays conflated there and is shed by the circuit breaker if Engine is
+    // gone; a critical event is only put back until it has gone criticalMaxAttempts sends
+    // without a 2xx, and not after its deadline, which a retry keeps.
+    private void retry(GameEvent event) {
+    	if(!event.isCritical()) {
+    		dispatcher.retry(event);
+    	} else if(++event.attempts < config.criticalMaxAttempts) {
+    		dispatcher.retry(event);
+    	} else {
+    		System.out.println("Gave up sending " + event.getName() + " to SteelSeries Engine after "
+    				+ event.attempts + " attempts");
+    		event.attempts = 0;
+    		// Past its deadline, so a resync can't put it back in the critical lane.
+    		event.deadlineNanos = System.nanoTime();
+    		metrics.dropped(event);
+    	}
+    }
+    
+    // Called once per answered or lost request, in posting order. A critical event only
+    // counts as delivered on a 2xx; a lost request or a server error is another failed
+    // attempt. Other statuses mean Engine won't take it, so sending it again is no use.
+    private void settleCritical(int status) {
+    	long request = answeredRequests++;
+    	if(criticalInFlight == 0) {
+    		return;
+    	}
+    	for(int i = 0; i < registry.size(); i++) {
+    		GameEvent event = registry.get(i);
+    		if(event.inFlightRequest != request) {
+    			continue;
+    		}
+    		event.inFlightRequest = -1;
+    		criticalInFlight--;
+    		if(status == 0 || status >= 500) {
+    			retry(event);
+    		} else {
+    			event.attempts = 0;
+    		}
+    	}
+    }
+    
+    // 200 means /multiple_game_events can be used for the rest of the session, 404 means
+    // it can't. Anything else (usually no answer at all) leaves it unknown until the next try.
+    private void probeMultipleEvents() {
+    	if(System.currentTimeMillis() - this.lastProbeTick < 5000) {
+    		return;
+    	}
+    	this.lastProbeTick = System.currentTimeMillis();
+    	
+    	encoder.encodeGame();
+    	if(executePost("/supports_multiple_game_events", TAG_SUPPORTS_MULTIPLE_GAME_EVENTS)) {
+    		// Answered through transportListener; give it a moment so this batch can use the result.
+    		transport.awaitResponses(PROBE_WAIT_NANOS);
+    	}
+    }
+    
+    // Queues a POST of whatever the encoder currently holds. Returns false if the
+    // transport couldn't take it (e.g. Engine is unreachable and we're waiting to retry).
+    private boolean executePost(String path, int tag) {
+    	return executePost(path, tag, null, 0, 0);
+    }
+    
+    // events[from..to) are the events the request carries, for the metrics.
+    private boolean executePost(String path, int tag, List<GameEvent> events, int from, int to) {
+    	TraceEvents.HttpExchange trace = TraceEvents.beginExchange(path, events, from, to, encoder.getLength());
+    	if(!transport.post(path, encoder.getBuffer(), encoder.getLength(), tag)) {
+    		TraceEvents.endExchange(trace, 0, "not sent");
+    		return false;
+    	}
+    	metrics.requestPosted(events, from, to);
+    	exchangeTraces.add(trace != null ? trace : NOT_TRACED);
+    	long request = postedRequests++;
+    	for(int i = from; i < to; i++) {
+    		GameEvent event = events.get(i);
+    		if(event.isCritical()) {
+    			if(event.inFlightRequest < 0) {
+    				criticalInFlight++;
+    			}
+    			event.inFlightRequest = request;
+    		}
+    	}
+    	heartbeat.onSent(System.nanoTime());
+    	return true;
+    }
+    
+    // Requests are answered in the order they were posted.
+    private void endExchangeTrace(int status, String outcome) {
+    	Object trace = exchangeTraces.poll();
+    	if(trace != null && trace != NOT_TRACED) {
+    		TraceEvents.endExchange((TraceEvents.HttpExchange) trace, status, outcome);
+    	}
+    }
+    
+    // Sender thread, between batches.
+    private void serviceTransport(long timeoutNanos) {
+    	long now = System.nanoTime();
+    	InetSocketAddress moved = discovery.poll(now);
+    	if(moved != null) {
+    		// Queued events stay queued; the transport reconnects on its next request and
+    		// onConnected resends the state. No point waiting out a backoff for the old address.
+    		sse3Address = discovery.getAddress();
+    		System.out.println("SteelSeries Engine moved to " + sse3Address);
+    		transport.setAddress(moved);
+    		breaker.probeNow(now);
+    	}
+    	// Here rather than in the tick, so reading and parsing the file never holds up the game.
+    	EventProfile reloaded = profileFile.poll(now);
+    	if(reloaded != null) {
+    		applyProfile(reloaded);
+    	}
+    	if(breaker.tryProbe(now)) {
+    		// A heartbeat is the cheapest request Engine answers.
+    		encoder.encodeGame();
+    		if(!executePost("/game_heartbeat", TAG_HEALTH_PROBE)
+    				&& breaker.getState() == CircuitBreaker.State.HALF_OPEN) {
+    			// Not even queued, and not already reported through onConnectFailed.
+    			onEngineFailure();
+    		}
+    	} else if(breaker.isClosed()) {
+    		registerEvents();
+    		if(heartbeat.isDue(now) && transport.isReady()) {
+    			encoder.encodeGame();
+    			executePost("/game_heartbeat", TAG_GAME_HEARTBEAT);
+    		}
+    	}
+    	transport.poll(timeoutNanos);
+    }
+    
+    // Sends /register_game_event (or /bind_game_event, for events with handlers) for every
+    // event with metadata when some are new to Engine. Both are idempotent, so after any
+    // change simply everything is sent again.
+    private void registerEvents() {
+    	int version = registry.getMetadataVersion();
+    	if(version == registeredVersion || !transport.isReady()) {
+    		return;
+    	}
+    	for(int i = 0; i < registry.size(); i++) {
+    		GameEvent event = registry.get(i);
+    		if(event.hasMetadata()) {
+    			String path = "/register_game_event";
+    			if(event.hasHandlers()) {
+    				encoder.encodeBinding(event);
+    				path = "/bind_game_event";
     			} else {
-    				// reset lastTick and continue
-    				this.lastTick = System.currentTimeMillis();
+    				encoder.encodeRegistration(event);
+    			}
+    			if(!executePost(path, TAG_REGISTER_GAME_EVENT)) {
+    				// Try again later.
+    				return;
     			}
     		}
-
-    		// Assume we're connected.
-    		isConnected = true;
-    		HttpResponse response;
-    		StringEntity se = new StringEntity(urlParameters);
-    		se.setContentType(new BasicHeader(HTTP.CONTENT_TYPE, "application/json"));
-    		ssePost.setEntity(se);
-    		response = sseClient.execute(ssePost);
+    	}
+    	registeredVersion = version;
+    }
+    
+    private void onEngineFailure() {
+    	if(breaker.onFailure(System.nanoTime())) {
+    		// Once per outage, not for every failed retry.
+    		showChatMessage("There was an error connecting to SteelSeries Engine 3");
+    	}
+    }
+    
+    private void showChatMessage(final String message) {
+    	// Chat has to be touched from the client thread.
+    	final Minecraft mc = Minecraft.getMinecraft();
+    	mc.addScheduledTask(new Runnable() {
+    		@Override
+    		public void run() {
+    			if(mc.thePlayer != null) {
+    				mc.thePlayer.addChatMessage(new ChatComponentText(message));
+    			}
+    		}
+    	});
+    }
+    
+    // Called on the sender thread from inside transport.poll().
+    private final EngineTransport.Listener transportListener = new EngineTransport.Listener() {
+    	@Override
+    	public void onResponse(int tag, int status, long roundTripNanos) {
+    		metrics.roundTripCompleted(roundTripNanos);
+    		metrics.requestCompleted(status >= 200 && status < 300);
+    		endExchangeTrace(status, status >= 200 && status < 300 ? "ok" : "http error");
+    		settleCritical(status);
     		
-    		if(response != null) {
-        		// Don't care about response?
-    			//InputStream is = response.getEntity().getContent();
-    			
-    			// reset the post so we can reuse it.
-    			ssePost.reset();
+    		// Engine answered, even if it didn't like the request; only server errors count against it.
+    		if(status >= 500) {
+    			onEngineFailure();
+    		} else if(breaker.onSuccess()) {
+    			// Back from an outage: nothing was queued meanwhile, so send the current state.
+    			multipleEventsSupport = MULTIPLE_EVENTS_UNKNOWN;
+    			registeredVersion = -1;
+    			dispatcher.requeueAll();
     		}
     		
-    	} catch (ConnectTimeoutException e) {
-    		// Couldn't actually connect.
-    		isConnected = false;
-    		if(player != null) {
-    			player.addChatMessage(new ChatComponentText("There was an error connecting to SteelSeries Engine 3"));
+    		if(tag == TAG_REGISTER_GAME_EVENT && status != 200) {
+    			System.out.println("SteelSeries Engine rejected a game event registration with status " + status);
     		}
-    	} catch (Exception e) {
-    		// Likely a socket timeout w/ "Read timed out" which is fine, we just want to set & forget.
-          	//e.printStackTrace();
-        }
-    }
+    		
+    		if(tag == TAG_SUPPORTS_MULTIPLE_GAME_EVENTS) {
+    			if(status == 200) {
+    				multipleEventsSupport = MULTIPLE_EVENTS_SUPPORTED;
+    			} else if(status == 404) {
+    				multipleEventsSupport = MULTIPLE_EVENTS_UNSUPPORTED;
+    			}
+    		} else if(tag == TAG_MULTIPLE_GAME_EVENTS && status == 404) {
+    			// Engine no longer knows the endpoint (e.g. it was downgraded); resend one by one.
+    			multipleEventsSupport = MULTIPLE_EVENTS_UNSUPPORTED;
+    			dispatcher.requeueAll();
+    		}
+    	}
+    	
+    	@Override
+    	public void onFailure(int tag) {
+    		metrics.requestCompleted(false);
+    		endExchangeTrace(0, "lost");
+    		settleCritical(0);
+    		onEngineFailure();
+    		if(tag == TAG_REGISTER_GAME_EVENT) {
+    			registeredVersion = -1;
+    		}
+    		if(tag == TAG_GAME_EVENT || tag == TAG_MULTIPLE_GAME_EVENTS) {
+    			// Critical events in it were retried by settleCritical; for the rest we don't
+    			// track what a lost request carried, so resend the current state.
+    			dispatcher.requeueAll();
+    		}
+    	}
+    	
+    	@Override
+    	public void onConnected(InetSocketAddress address) {
+    		if(hasConnected) {
+    			// Engine may have restarted (possibly as another version) and lost our state:
+    			// ask about batching again and resend the latest value of every event that is
+    			// state (see SetEventResync).
+    			multipleEventsSupport = MULTIPLE_EVENTS_UNKNOWN;
+    			registeredVersion = -1;
+    			dispatcher.requeueAll();
+    		}
+    		hasConnected = true;
+    	}
+    	
+    	@Override
+    	public void onConnectFailed(IOException cause) {
+    		onEngineFailure();
+    	}
+    };
     
     private void ConnectToSSE3() {
-    	String jsonAddress = "";
-    	// First open the config file to see what port to connect to.
-		// Try to open Windows path one first
-    	try {
-			String corePropsFileName = System.getenv("PROGRAMDATA") + "\\SteelSeries\\SteelSeries Engine 3\\coreProps.json";
-			BufferedReader coreProps = new BufferedReader(new FileReader(corePropsFileName));
-	    	jsonAddress = coreProps.readLine();
-	    	System.out.println("Opened coreprops.json and read: " + jsonAddress);
-	    	coreProps.close();
-    	} catch (FileNotFoundException e) {
-			//e.printStackTrace();
-			System.out.println("coreprops.json not found (Mac check)");
-		} catch (IOException e) {
-			e.printStackTrace();
-			System.out.println("Something terrible happened looking for coreProps.json");
-		}
-		
-		// If not on Windows, jsonAddress is probably still "", so try to open w/ Mac path
-    	if(jsonAddress == "") {
-	    	try {
-				String corePropsFileName = "/Library/Application Support/SteelSeries Engine 3/coreProps.json";
-				BufferedReader coreProps = new BufferedReader(new FileReader(corePropsFileName));
-		    	jsonAddress = coreProps.readLine();
-		    	System.out.println("Opened coreprops.json and read: " + jsonAddress);
-		    	coreProps.close();
-			} catch (FileNotFoundException e) {
-				//e.printStackTrace();
-				System.out.println("coreprops.json not found (Windows check)");
-			} catch (IOException e) {
-				e.printStackTrace();
-				System.out.println("Something terrible happened looking for coreProps.json");
-			}
-    	}
-		
-		try {
-			// If we got a json string of address of localhost:<port> open a connection to it
-			if(jsonAddress != "") {
-				JSONObject obj = new JSONObject(jsonAddress);
-				sse3Address = "http://" + obj.getString("address") + "/game_event";
-			} else {
-				// Debug default:
-				sse3Address = "http://localhost:3000/game_event";
-			}
-			
-    		sseClient = HttpClients.createDefault();
-    		RequestConfig sseReqCfg = RequestConfig.custom()
-    				.setSocketTimeout(10)
-    				.setConnectTimeout(10)
-    				.setConnectionRequestTimeout(50)
-    				.build();
-    		ssePost = new HttpPost(sse3Address);
-    		ssePost.setConfig(sseReqCfg);
-			
-		} catch (JSONException e) {
-			e.printStackTrace();
-			System.out.println("Something terrible happened creating JSONObject from coreProps.json.");
-		}
+    	InetSocketAddress address = discovery.resolve();
+    	if(address == null) {
+    		return;
+    	}
+    	sse3Address = discovery.getAddress();
+    	System.out.println("Sending GameSense events to " + sse3Address);
+    	transport.setAddress(address);
+    	// A (re)connected Engine may be a different version, so ask again.
+    	multipleEventsSupport = MULTIPLE_EVENTS_UNKNOWN;
     }
     
     @EventHandler
     public void preInit(FMLPreInitializationEvent event) {
+    	config = new GameSenseConfig(event.getSuggestedConfigurationFile());
+    	config.load();
+    	profileFile = new EventProfileFile(new File(event.getModConfigurationDirectory(), "gamesense-events.json"),
+    			config.eventProfilePollMs);
     }
     
     @EventHandler
     public void init(FMLInitializationEvent event)
     {
+    	try {
+    		transport = new NioHttpTransport(config.connectTimeoutMs, config.responseTimeoutMs);
+    	} catch (IOException e) {
+    		e.printStackTrace();
+    		System.out.println("Couldn't open a network selector, GameSense events are disabled.");
+    		return;
+    	}
+    	transport.setListener(transportListener);
+    	heartbeat = new HeartbeatScheduler(config.heartbeatIntervalMs);
+    	discovery = new EngineDiscovery(config.corePropsPath, config.engineAddress, config.discoveryPollMs);
+    	profile = profileFile.load();
+    	throttle = new EventThrottle(profile.limitSpecs(config.eventLimits), config.deadbandSettleMs);
+    	breaker = new CircuitBreaker(config.failureThreshold, config.backoffBaseMs, config.backoffMaxMs);
     	ConnectToSSE3();
+    	dispatcher = new EventDispatcher(registry, config.queueCapacity, config.overflowPolicy,
+    			config.criticalDeadlineMs * 1000000L, config.maxBatchSize, metrics,
+    			new EventDispatcher.Sender() {
+    				@Override
+    				public void send(List<GameEvent> batch) {
+    					sendBatch(batch);
+    				}
+    				
+    				@Override
+    				public boolean isReady() {
+    					return breaker.isClosed() && transport.isReady();
+    				}
+    				
+    				@Override
+    				public void service(long timeoutNanos) {
+    					serviceTransport(timeoutNanos);
+    				}
+    				
+    				@Override
+    				public void wakeup() {
+    					transport.wakeup();
+    				}
+    			});
+    	metrics.setDispatcher(dispatcher);
+    	if(config.metricsJmx) {
+    		metrics.registerMBeans();
+    	}
+    	dispatcher.start();
+    	if(config.recordEvents) {
+    		try {
+    			System.out.println("Recording GameSense events to " + StartRecording());
+    		} catch (IOException e) {
+    			e.printStackTrace();
+    			System.out.println("Couldn't start recording GameSense events");
+    		}
+    	}
     }
     
     @EventHandler
     public void postInit(FMLPostInitializationEvent event) {
-    	MinecraftForge.EVENT_BUS.register(new GameSenseEventReceiver(Minecraft.getMinecraft()));
+    	GameSenseEventReceiver receiver = new GameSenseEventReceiver(Minecraft.getMinecraft());
+    	// World events come from the Forge bus, tick events from the FML one.
+    	MinecraftForge.EVENT_BUS.register(receiver);
+    	FMLCommonHandler.instance().bus().register(receiver);
+    	ClientCommandHandler.instance.registerCommand(new GameSenseCommand(this));
+    	// Every event is registered by now, so the first profile can list them all.
+    	profileFile.writeDefaults(registry);
     }    
 }
@@ -0,0 +1,31 @@
+package com.sse3.gamesense;
+
+// Decides when to POST /game_heartbeat. Engine deactivates a game that has been
+// silent for its timeout (15 seconds by default), so while the game is active we
+// send a heartbeat whenever nothing else has gone out for a whole interval, instead
+// of resending every event just to stay alive.
+//
+// setActive() may be called from any thread, everything else from the sender thread.
+public class HeartbeatScheduler {
+
+	private final long intervalNanos;
+	private volatile boolean active = false;
+	private long lastSendNanos = System.nanoTime();
+
+	public HeartbeatScheduler(int intervalMillis) {
+		this.intervalNanos = intervalMillis * 1000000L;
+	}
+
+	public void setActive(boolean active) {
+		this.active = active;
+	}
+
+	// Any request that reaches Engine resets its timer, heartbeats included.
+	public void onSent(long nowNanos) {
+		this.lastSendNanos = nowNanos;
+	}
+
+	public boolean isDue(long nowNanos) {
+		return this.active && this.intervalNanos > 0 && nowNanos - this.lastSendNanos >= this.intervalNanos;
+	}
+}
@@ -0,0 +1,75 @@
+package com.sse3.gamesense;
+
+// The colour of every key on a per-key RGB keyboard, in the 22x6 grid bitmap
+// handlers take: rows top to bottom, each left to right, one packed 0xRRGGBB int per
+// key. Engine maps the grid onto the keys of the actual keyboard and ignores the
+// cells that don't land on one.
+//
+// Like OledBitmap it is meant to be redrawn in place for every frame; nothing here
+// allocates. Drawing outside the grid is clipped.
+public final class KeyboardBitmap {
+
+	public static final int WIDTH = 22;
+	public static final int HEIGHT = 6;
+	public static final int KEYS = WIDTH * HEIGHT;
+	// The frame key bitmap and partial-bitmap handlers read.
+	static final String FRAME_KEY = "bitmap";
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	final int[] colors = new int[KEYS];
+
+	public static int rgb(int red, int green, int blue) {
+		return (red & 0xff) << 16 | (green & 0xff) << 8 | (blue & 0xff);
+	}
+
+	public void fill(int rgb) {
+		for (int i = 0; i < KEYS; i++) {
+			this.colors[i] = rgb;
+		}
+	}
+
+	public void set(int x, int y, int rgb) {
+		if (x < 0 || y < 0 || x >= WIDTH || y >= HEIGHT) {
+			return;
+		}
+		this.colors[y * WIDTH + x] = rgb;
+	}
+
+	public int get(int x, int y) {
+		if (x < 0 || y < 0 || x >= WIDTH || y >= HEIGHT) {
+			return 0;
+		}
+		return this.colors[y * WIDTH + x];
+	}
+
+	public void fillRow(int y, int rgb) {
+		fillRect(0, y, WIDTH, 1, rgb);
+	}
+
+	public void fillRect(int x, int y, int width, int height, int rgb) {
+		int left = Math.max(0, x);
+		int right = Math.min(WIDTH, x + width);
+		int top = Math.max(0, y);
+		int bottom = Math.min(HEIGHT, y + height);
+		for (int row = top; row < bottom; row++) {
+			int offset = row * WIDTH;
+			for (int col = left; col < right; col++) {
+				this.colors[offset + col] = rgb;
+			}
+		}
+	}
+
+	// 64 bit FNV-1a over the colours, as for OledBitmap.
+	public long contentHash() {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0; i < KEYS; i++) {
+			int rgb = this.colors[i];
+			hash = (hash ^ (rgb >>> 16 & 0xff)) * FNV_PRIME;
+			hash = (hash ^ (rgb >>> 8 & 0xff)) * FNV_PRIME;
+			hash = (hash ^ (rgb & 0xff)) * FNV_PRIME;
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,75 @@
+package com.sse3.gamesense;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// A fixed size histogram of durations in nanoseconds, in the style of HdrHistogram:
+// every power of two is split into 16 linear buckets, so any recorded value is
+// known to within about 6% over the whole range from 1ns to hours. Recording is a
+// couple of shifts and one atomic increment, and never allocates.
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		this.counts.incrementAndGet(bucketOf(nanos));
+		this.total.incrementAndGet();
+		long currentMax;
+		while (nanos > (currentMax = this.max.get()) && !this.max.compareAndSet(currentMax, nanos)) {
+		}
+	}
+
+	public long getCount() {
+		return this.total.get();
+	}
+
+	public long getMax() {
+		return this.max.get();
+	}
+
+	// The value below which the given fraction (0 to 1) of recorded values fall, rounded
+	// up to the end of its bucket. 0 if nothing was recorded.
+	public long getPercentile(double fraction) {
+		long count = this.total.get();
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(fraction * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += this.counts.get(i);
+			if (seen >= rank) {
+				return Math.min(upperBoundOf(i), this.max.get());
+			}
+		}
+		return this.max.get();
+	}
+
+	private static int bucketOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		int shift = magnitude - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+		return (shift + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long upperBoundOf(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long subBucket = bucket % SUB_BUCKETS;
+		return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+	}
+}
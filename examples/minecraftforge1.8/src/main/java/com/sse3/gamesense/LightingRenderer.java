@@ -0,0 +1,60 @@
+package com.sse3.gamesense;
+
+import net.minecraft.entity.player.EntityPlayer;
+
+// Draws the ambient keyboard lighting into a KeyboardBitmap: a glow from the bottom
+// of the keyboard that goes from green to red as the player loses health, turns blue
+// under water and darkens as the air runs out, and a red flash that fades out over
+// the half second after each hit.
+//
+// Every colour comes from palettes built here once, one per keyboard row, so a frame
+// is a few lookups and 132 stores.
+public class LightingRenderer {
+
+	private static final int RED = KeyboardBitmap.rgb(255, 0, 0);
+	private static final int YELLOW = KeyboardBitmap.rgb(255, 200, 0);
+	private static final int GREEN = KeyboardBitmap.rgb(0, 255, 0);
+	private static final int DEEP_BLUE = KeyboardBitmap.rgb(20, 0, 90);
+	private static final int WATER_BLUE = KeyboardBitmap.rgb(0, 120, 255);
+	private static final int BLACK = 0;
+	// Brightness of each row, top to bottom, in percent.
+	private static final int[] ROW_BRIGHTNESS = { 20, 35, 50, 65, 85, 100 };
+	// Air ticks at full breath.
+	private static final int MAX_AIR = 300;
+	// hurtTime right after a hit; it counts down one a tick.
+	private static final int MAX_HURT_TIME = 10;
+
+	private final Palette[] healthRows = rows(Palette.gradient(101, RED, YELLOW, GREEN));
+	private final Palette[] waterRows = rows(Palette.gradient(101, DEEP_BLUE, WATER_BLUE));
+	// By hurtTime: black once the flash is over, full red right after the hit.
+	private final Palette flash = Palette.gradient(MAX_HURT_TIME + 1, BLACK, RED);
+
+	private static Palette[] rows(Palette palette) {
+		Palette[] rows = new Palette[KeyboardBitmap.HEIGHT];
+		for (int y = 0; y < rows.length; y++) {
+			rows[y] = palette.scaled(ROW_BRIGHTNESS[y]);
+		}
+		return rows;
+	}
+
+	public void render(KeyboardBitmap bitmap, EntityPlayer player) {
+		if (player.hurtTime > 0) {
+			bitmap.fill(this.flash.get(player.hurtTime));
+			return;
+		}
+
+		Palette[] rows;
+		int level;
+		if (player.isInWater()) {
+			rows = this.waterRows;
+			level = Math.max(0, player.getAir()) * 100 / MAX_AIR;
+		} else {
+			rows = this.healthRows;
+			int maxHealth = (int) player.getMaxHealth();
+			level = maxHealth > 0 ? 100 * (int) player.getHealth() / maxHealth : 0;
+		}
+		for (int y = 0; y < KeyboardBitmap.HEIGHT; y++) {
+			bitmap.fillRow(y, rows[y].get(level));
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package com.sse3.gamesense;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+// Streams a KeyboardBitmap to per-key RGB keyboards through an event's frame, at most
+// maxFps times a second and only when the colours changed. Used like BitmapStream:
+//
+//   if (stream.isDue(now)) {
+//       draw into stream.getBitmap()
+//       stream.send(now);
+//   }
+//
+// The colours are encoded straight from the frame's copy of the int array, so a frame
+// costs one copy and no garbage however many keys change.
+public class LightingStream {
+
+	private final GameSenseMod mod;
+	private final int handle;
+	private final KeyboardBitmap bitmap = new KeyboardBitmap();
+	private final long frameIntervalNanos;
+	private long nextFrameNanos;
+	private boolean forceSend = true;
+
+	// Binds the event to a full-keyboard handler. With no excluded events it lights
+	// every key; otherwise it is a background that leaves the keys of those events
+	// to their own handlers.
+	public LightingStream(GameSenseMod mod, String eventName, int maxFps, String... excludedEvents) {
+		this.mod = mod;
+		this.frameIntervalNanos = 1000000000L / Math.max(1, maxFps);
+		this.nextFrameNanos = System.nanoTime();
+		this.handle = mod.BindGameEvent(eventName, 0, 1, GameSenseMod.ICON_NONE, keyboardHandlers(excludedEvents));
+		// The value is always 1; only the colours in the frame change.
+		mod.SetValueOptional(this.handle, true);
+	}
+
+	public KeyboardBitmap getBitmap() {
+		return this.bitmap;
+	}
+
+	// Never while the event profile has the event turned off, so nothing is drawn.
+	public boolean isDue(long nowNanos) {
+		if (!this.mod.IsEventEnabled(this.handle)) {
+			// Turned back on, the current picture goes out even if it didn't change.
+			this.forceSend = true;
+			return false;
+		}
+		return nowNanos - this.nextFrameNanos >= 0;
+	}
+
+	// Sends the colours if they differ from the last frame sent. Returns whether it did.
+	public boolean send(long nowNanos) {
+		this.nextFrameNanos = nowNanos + this.frameIntervalNanos;
+		this.mod.GetFrame(this.handle).put(this.bitmap);
+		boolean sent = this.mod.SendFrame(this.handle, 1);
+		if (!sent && this.forceSend) {
+			this.mod.SendGameEvent(this.handle, 1);
+			sent = true;
+		}
+		this.forceSend = false;
+		return sent;
+	}
+
+	// Lets the next send() go out even if the colours are the same, e.g. in a new world.
+	public void reset() {
+		this.nextFrameNanos = System.nanoTime();
+		this.forceSend = true;
+	}
+
+	private static JSONArray keyboardHandlers(String[] excludedEvents) {
+		JSONObject handler = new JSONObject();
+		handler.put("device-type", "rgb-per-key-zones");
+		if (excludedEvents.length == 0) {
+			handler.put("mode", "bitmap");
+		} else {
+			JSONArray excluded = new JSONArray();
+			for (int i = 0; i < excludedEvents.length; i++) {
+				excluded.put(excludedEvents[i]);
+			}
+			handler.put("mode", "partial-bitmap");
+			handler.put("excluded-events", excluded);
+		}
+		return new JSONArray().put(handler);
+	}
+}
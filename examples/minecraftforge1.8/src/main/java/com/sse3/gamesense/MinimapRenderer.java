@@ -0,0 +1,70 @@
+package com.sse3.gamesense;
+
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.util.MathHelper;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+
+// Draws a map of the surroundings and a compass into an OledBitmap for the OLED.
+//
+// The map on the left is north up, one pixel per block, centred on the player, and
+// lights every column whose surface is above the player's head: walls, hills, trees
+// and roofs. The compass on the right points where the player is looking.
+//
+// Heights come straight from each chunk's height map, looked up once per column with
+// the chunk reused for up to 16 of them, so a frame allocates nothing.
+public class MinimapRenderer {
+
+	private static final int MAP_WIDTH = 64;
+	private static final int COMPASS_RADIUS = 16;
+
+	public void render(OledBitmap bitmap, EntityPlayer player) {
+		bitmap.clear();
+
+		World world = player.worldObj;
+		int playerX = MathHelper.floor_double(player.posX);
+		int playerZ = MathHelper.floor_double(player.posZ);
+		int headY = MathHelper.floor_double(player.posY) + 1;
+		int mapWidth = Math.min(MAP_WIDTH, bitmap.width);
+		int mapHeight = bitmap.height;
+		int left = playerX - mapWidth / 2;
+		int top = playerZ - mapHeight / 2;
+
+		for (int col = 0; col < mapWidth; col++) {
+			int x = left + col;
+			Chunk chunk = null;
+			int chunkZ = 0;
+			for (int row = 0; row < mapHeight; row++) {
+				int z = top + row;
+				if (chunk == null || (z >> 4) != chunkZ) {
+					chunkZ = z >> 4;
+					chunk = world.getChunkFromChunkCoords(x >> 4, chunkZ);
+				}
+				if (chunk.getHeightValue(x & 15, z & 15) > headY) {
+					bitmap.set(col, row, true);
+				}
+			}
+		}
+
+		// The player, as a cross that stands out against both lit and unlit terrain.
+		int centerX = mapWidth / 2;
+		int centerY = mapHeight / 2;
+		bitmap.drawLine(centerX - 2, centerY, centerX + 2, centerY, true);
+		bitmap.drawLine(centerX, centerY - 2, centerX, centerY + 2, true);
+		bitmap.set(centerX, centerY, false);
+		bitmap.drawLine(mapWidth, 0, mapWidth, mapHeight - 1, true);
+
+		int compassX = mapWidth + (bitmap.width - mapWidth) / 2;
+		int compassY = mapHeight / 2;
+		bitmap.drawCircle(compassX, compassY, COMPASS_RADIUS, true);
+		// North tick.
+		bitmap.drawLine(compassX, compassY - COMPASS_RADIUS, compassX, compassY - COMPASS_RADIUS + 3, true);
+		// Yaw 0 faces south (+z, down on the map) and grows clockwise seen from above.
+		double yaw = Math.toRadians(player.rotationYaw);
+		int needle = COMPASS_RADIUS - 3;
+		int tipX = compassX + (int) Math.round(-Math.sin(yaw) * needle);
+		int tipY = compassY + (int) Math.round(Math.cos(yaw) * needle);
+		bitmap.drawLine(compassX, compassY, tipX, tipY, true);
+		bitmap.fillRect(compassX - 1, compassY - 1, 3, 3, true);
+	}
+}
@@ -0,0 +1,513 @@
+package com.sse3.gamesense;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+
+// Minimal HTTP/1.1 client for the local Engine endpoint. It keeps a single persistent
+// TCP_NODELAY connection, writes requests back to back without waiting for answers
+// (pipelining), and parses the responses as they arrive. A lost connection fails the
+// requests that were in flight and is reopened by the next post(). Backing off from an
+// unreachable Engine is left to the caller (see CircuitBreaker).
+//
+// Not thread safe apart from setAddress() and wakeup(); the sender thread owns it.
+public class NioHttpTransport implements EngineTransport {
+
+	private static final Charset US_ASCII = Charset.forName("US-ASCII");
+	private static final byte[] HEAD_END = "\r\n\r\n".getBytes(US_ASCII);
+	private static final byte[] CONTENT_LENGTH = "content-length:".getBytes(US_ASCII);
+	private static final byte[] TRANSFER_ENCODING = "transfer-encoding:".getBytes(US_ASCII);
+	private static final byte[] CONNECTION = "connection:".getBytes(US_ASCII);
+	private static final byte[] CHUNKED = "chunked".getBytes(US_ASCII);
+	private static final byte[] CLOSE = "close".getBytes(US_ASCII);
+
+	private static final int MAX_IN_FLIGHT = 64;
+	private static final int MAX_LINE = 512;
+
+	private static final int PARSE_STATUS_LINE = 0;
+	private static final int PARSE_HEADERS = 1;
+	private static final int PARSE_BODY = 2;
+	private static final int PARSE_CHUNK_SIZE = 3;
+	private static final int PARSE_CHUNK_DATA = 4;
+	private static final int PARSE_TRAILER = 5;
+
+	private final int connectTimeoutMillis;
+	private final long responseTimeoutNanos;
+	private final Selector selector;
+	private Listener listener;
+
+	private volatile InetSocketAddress address = null;
+	private InetSocketAddress connectedAddress = null;
+	private SocketChannel channel = null;
+	private SelectionKey key = null;
+
+	// "POST <path> HTTP/1.1\r\nHost: ...\r\nContent-Length: " per path, for connectedAddress.
+	private final HashMap<String, byte[]> requestHeads = new HashMap<String, byte[]>();
+	private ByteBuffer outbound = ByteBuffer.allocateDirect(16 * 1024);
+	private final ByteBuffer inbound = ByteBuffer.allocateDirect(8 * 1024);
+
+	// Requests waiting for a response, oldest first.
+	private final int[] inFlightTags = new int[MAX_IN_FLIGHT];
+	private final long[] inFlightSentNanos = new long[MAX_IN_FLIGHT];
+	private int inFlightHead = 0;
+	private int inFlightCount = 0;
+
+	// Response parser state.
+	private int parseState = PARSE_STATUS_LINE;
+	private final byte[] line = new byte[MAX_LINE];
+	private int lineLength = 0;
+	private int status = 0;
+	private long contentLength = -1;
+	private long bodyRemaining = 0;
+	private boolean chunked = false;
+	private boolean closeAfterResponse = false;
+
+	public NioHttpTransport(int connectTimeoutMillis, int responseTimeoutMillis) throws IOException {
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.responseTimeoutNanos = responseTimeoutMillis * 1000000L;
+		this.selector = Selector.open();
+	}
+
+	@Override
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	@Override
+	public void setAddress(InetSocketAddress address) {
+		this.address = address;
+		// Let a sleeping sender notice the new target straight away.
+		this.selector.wakeup();
+	}
+
+	@Override
+	public InetSocketAddress getAddress() {
+		return this.address;
+	}
+
+	@Override
+	public boolean isReady() {
+		InetSocketAddress target = this.address;
+		if (target == null) {
+			return false;
+		}
+		if (this.channel != null && target.equals(this.connectedAddress)) {
+			return this.inFlightCount < MAX_IN_FLIGHT;
+		}
+		// post() will (re)connect.
+		return true;
+	}
+
+	@Override
+	public boolean post(String path, byte[] body, int length, int tag) {
+		if (!ensureConnected() || this.inFlightCount == MAX_IN_FLIGHT) {
+			return false;
+		}
+
+		byte[] head = this.requestHeads.get(path);
+		if (head == null) {
+			head = ("POST " + path + " HTTP/1.1\r\n"
+					+ "Host: " + this.connectedAddress.getHostString() + ":" + this.connectedAddress.getPort() + "\r\n"
+					+ "Content-Type: application/json\r\n"
+					+ "Content-Length: ").getBytes(US_ASCII);
+			this.requestHeads.put(path, head);
+		}
+
+		ensureOutboundCapacity(head.length + 10 + HEAD_END.length + length);
+		this.outbound.put(head);
+		putDecimal(length);
+		this.outbound.put(HEAD_END);
+		this.outbound.put(body, 0, length);
+
+		int slot = (this.inFlightHead + this.inFlightCount) % MAX_IN_FLIGHT;
+		this.inFlightTags[slot] = tag;
+		this.inFlightSentNanos[slot] = System.nanoTime();
+		this.inFlightCount++;
+
+		writeOutbound();
+		return true;
+	}
+
+	@Override
+	public void poll(long timeoutNanos) {
+		try {
+			if (timeoutNanos <= 0) {
+				this.selector.selectNow();
+			} else {
+				// Never wait past the point where the oldest request times out.
+				if (this.inFlightCount > 0) {
+					long deadline = this.inFlightSentNanos[this.inFlightHead] + this.responseTimeoutNanos;
+					timeoutNanos = Math.min(timeoutNanos, Math.max(0, deadline - System.nanoTime()));
+				}
+				long millis = Math.max(1, timeoutNanos / 1000000L);
+				this.selector.select(millis);
+			}
+			this.selector.selectedKeys().clear();
+		} catch (IOException e) {
+			closeConnection();
+			return;
+		}
+
+		if (this.channel != null) {
+			// Checking the key directly instead of iterating selectedKeys() avoids an iterator.
+			if (this.key.isValid() && (this.key.readyOps() & SelectionKey.OP_WRITE) != 0) {
+				writeOutbound();
+			}
+			if (this.channel != null && this.key.isValid() && (this.key.readyOps() & SelectionKey.OP_READ) != 0) {
+				readInbound();
+			}
+		}
+
+		if (this.inFlightCount > 0
+				&& System.nanoTime() - this.inFlightSentNanos[this.inFlightHead] > this.responseTimeoutNanos) {
+			// Engine stopped answering; the connection can't be trusted to stay in sync.
+			closeConnection();
+		}
+
+		if (this.channel != null && !this.address.equals(this.connectedAddress) && this.inFlightCount == 0) {
+			// Moved to a new address and nothing is left to read from the old one.
+			closeConnection();
+		}
+	}
+
+	@Override
+	public void awaitResponses(long timeoutNanos) {
+		long deadline = System.nanoTime() + timeoutNanos;
+		while (this.inFlightCount > 0) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return;
+			}
+			poll(remaining);
+		}
+	}
+
+	@Override
+	public void wakeup() {
+		this.selector.wakeup();
+	}
+
+	@Override
+	public void close() {
+		closeConnection();
+		try {
+			this.selector.close();
+		} catch (IOException e) {
+			// Nothing useful to do.
+		}
+	}
+
+	public int getInFlightCount() {
+		return this.inFlightCount;
+	}
+
+	private boolean ensureConnected() {
+		InetSocketAddress target = this.address;
+		if (target == null) {
+			return false;
+		}
+		if (this.channel != null) {
+			if (target.equals(this.connectedAddress)) {
+				return true;
+			}
+			// The target moved. Anything still in flight on the old connection is failed.
+			closeConnection();
+		}
+
+		SocketChannel opened = null;
+		try {
+			opened = SocketChannel.open();
+			opened.socket().setTcpNoDelay(true);
+			opened.socket().setKeepAlive(true);
+			// Connect in blocking mode so the timeout applies; this only runs on the sender thread.
+			opened.socket().connect(target, this.connectTimeoutMillis);
+			opened.configureBlocking(false);
+			this.key = opened.register(this.selector, SelectionKey.OP_READ);
+		} catch (IOException e) {
+			if (opened != null) {
+				try {
+					opened.close();
+				} catch (IOException closeFailure) {
+					// Already failed.
+				}
+			}
+			if (this.listener != null) {
+				this.listener.onConnectFailed(e);
+			}
+			return false;
+		}
+
+		this.channel = opened;
+		this.connectedAddress = target;
+		this.requestHeads.clear();
+		this.outbound.clear();
+		this.inbound.clear();
+		resetParser();
+		if (this.listener != null) {
+			this.listener.onConnected(target);
+		}
+		return true;
+	}
+
+	private void closeConnection() {
+		if (this.channel != null) {
+			if (this.key != null) {
+				this.key.cancel();
+			}
+			try {
+				this.channel.close();
+			} catch (IOException e) {
+				// Closing anyway.
+			}
+			this.channel = null;
+			this.key = null;
+		}
+		this.outbound.clear();
+		this.inbound.clear();
+		resetParser();
+
+		while (this.inFlightCount > 0) {
+			int tag = this.inFlightTags[this.inFlightHead];
+			this.inFlightHead = (this.inFlightHead + 1) % MAX_IN_FLIGHT;
+			this.inFlightCount--;
+			if (this.listener != null) {
+				this.listener.onFailure(tag);
+			}
+		}
+	}
+
+	private void writeOutbound() {
+		if (this.channel == null) {
+			return;
+		}
+		try {
+			this.outbound.flip();
+			this.channel.write(this.outbound);
+			boolean remaining = this.outbound.hasRemaining();
+			this.outbound.compact();
+			// Only ask for OP_WRITE while the socket buffer is full.
+			this.key.interestOps(remaining ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+		} catch (IOException e) {
+			closeConnection();
+		}
+	}
+
+	private void readInbound() {
+		try {
+			int read;
+			while ((read = this.channel.read(this.inbound)) > 0) {
+				this.inbound.flip();
+				while (this.inbound.hasRemaining() && this.channel != null) {
+					parse();
+				}
+				this.inbound.clear();
+				if (this.channel == null) {
+					return;
+				}
+			}
+			if (read < 0) {
+				closeConnection();
+			}
+		} catch (IOException e) {
+			closeConnection();
+		}
+	}
+
+	// Consumes bytes from inbound until a line, body chunk or response is complete.
+	private void parse() {
+		if (this.parseState == PARSE_BODY || this.parseState == PARSE_CHUNK_DATA) {
+			int skip = (int) Math.min(this.bodyRemaining, this.inbound.remaining());
+			this.inbound.position(this.inbound.position() + skip);
+			this.bodyRemaining -= skip;
+			if (this.bodyRemaining == 0) {
+				if (this.parseState == PARSE_BODY) {
+					completeResponse();
+				} else {
+					this.parseState = PARSE_CHUNK_SIZE;
+				}
+			}
+			return;
+		}
+
+		while (this.inbound.hasRemaining()) {
+			byte b = this.inbound.get();
+			if (b == '\n') {
+				handleLine();
+				this.lineLength = 0;
+				return;
+			}
+			if (b != '\r' && this.lineLength < MAX_LINE) {
+				this.line[this.lineLength++] = b;
+			}
+		}
+	}
+
+	private void handleLine() {
+		switch (this.parseState) {
+			case PARSE_STATUS_LINE: {
+				if (this.lineLength == 0) {
+					// Tolerate a stray CRLF between responses.
+					return;
+				}
+				// HTTP/1.1 200 OK
+				int i = 0;
+				while (i < this.lineLength && this.line[i] != ' ') {
+					i++;
+				}
+				this.status = (int) parseNumber(i + 1, 10);
+				this.parseState = PARSE_HEADERS;
+				break;
+			}
+			case PARSE_HEADERS: {
+				if (this.lineLength > 0) {
+					handleHeader();
+					return;
+				}
+				if (this.chunked) {
+					this.parseState = PARSE_CHUNK_SIZE;
+				} else if (this.contentLength > 0) {
+					this.bodyRemaining = this.contentLength;
+					this.parseState = PARSE_BODY;
+				} else {
+					if (this.contentLength < 0 && this.status != 204 && this.status != 304) {
+						// Body delimited by connection close; we can't reuse the connection.
+						this.closeAfterResponse = true;
+					}
+					completeResponse();
+				}
+				break;
+			}
+			case PARSE_CHUNK_SIZE: {
+				if (this.lineLength == 0) {
+					// CRLF after the previous chunk's data.
+					return;
+				}
+				long size = parseNumber(0, 16);
+				if (size == 0) {
+					this.parseState = PARSE_TRAILER;
+				} else {
+					this.bodyRemaining = size;
+					this.parseState = PARSE_CHUNK_DATA;
+				}
+				break;
+			}
+			case PARSE_TRAILER: {
+				if (this.lineLength == 0) {
+					completeResponse();
+				}
+				break;
+			}
+			default:
+				break;
+		}
+	}
+
+	private void handleHeader() {
+		if (startsWithIgnoreCase(CONTENT_LENGTH)) {
+			this.contentLength = parseNumber(skipSpaces(CONTENT_LENGTH.length), 10);
+		} else if (startsWithIgnoreCase(TRANSFER_ENCODING)) {
+			this.chunked = containsIgnoreCase(CHUNKED, TRANSFER_ENCODING.length);
+		} else if (startsWithIgnoreCase(CONNECTION)) {
+			this.closeAfterResponse = containsIgnoreCase(CLOSE, CONNECTION.length);
+		}
+	}
+
+	private void completeResponse() {
+		boolean close = this.closeAfterResponse;
+		int completedStatus = this.status;
+		resetParser();
+
+		if (this.inFlightCount > 0) {
+			int tag = this.inFlightTags[this.inFlightHead];
+			long sent = this.inFlightSentNanos[this.inFlightHead];
+			this.inFlightHead = (this.inFlightHead + 1) % MAX_IN_FLIGHT;
+			this.inFlightCount--;
+			if (this.listener != null) {
+				this.listener.onResponse(tag, completedStatus, System.nanoTime() - sent);
+			}
+		}
+
+		if (close) {
+			closeConnection();
+		}
+	}
+
+	private void resetParser() {
+		this.parseState = PARSE_STATUS_LINE;
+		this.lineLength = 0;
+		this.status = 0;
+		this.contentLength = -1;
+		this.bodyRemaining = 0;
+		this.chunked = false;
+		this.closeAfterResponse = false;
+	}
+
+	private long parseNumber(int from, int radix) {
+		long value = 0;
+		for (int i = from; i < this.lineLength; i++) {
+			int digit = Character.digit(this.line[i], radix);
+			if (digit < 0) {
+				break;
+			}
+			value = value * radix + digit;
+		}
+		return value;
+	}
+
+	private int skipSpaces(int from) {
+		while (from < this.lineLength && (this.line[from] == ' ' || this.line[from] == '\t')) {
+			from++;
+		}
+		return from;
+	}
+
+	private boolean startsWithIgnoreCase(byte[] lowerCasePrefix) {
+		if (this.lineLength < lowerCasePrefix.length) {
+			return false;
+		}
+		for (int i = 0; i < lowerCasePrefix.length; i++) {
+			if (toLower(this.line[i]) != lowerCasePrefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean containsIgnoreCase(byte[] lowerCaseWord, int from) {
+		for (int start = from; start + lowerCaseWord.length <= this.lineLength; start++) {
+			int i = 0;
+			while (i < lowerCaseWord.length && toLower(this.line[start + i]) == lowerCaseWord[i]) {
+				i++;
+			}
+			if (i == lowerCaseWord.length) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static byte toLower(byte b) {
+		return (b >= 'A' && b <= 'Z') ? (byte) (b + ('a' - 'A')) : b;
+	}
+
+	private void putDecimal(int value) {
+		if (value >= 10) {
+			putDecimal(value / 10);
+		}
+		this.outbound.put((byte) ('0' + value % 10));
+	}
+
+	private void ensureOutboundCapacity(int extra) {
+		if (this.outbound.remaining() < extra) {
+			ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(this.outbound.capacity() * 2, this.outbound.position() + extra));
+			this.outbound.flip();
+			grown.put(this.outbound);
+			this.outbound = grown;
+		}
+	}
+}
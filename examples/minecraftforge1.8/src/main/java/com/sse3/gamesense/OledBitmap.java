@@ -0,0 +1,126 @@
+package com.sse3.gamesense;
+
+// A 1 bit per pixel image in the layout OLED screen handlers take as image-data: rows
+// top to bottom, each packed left to right, most significant bit first, with no
+// padding between rows, for ceil(width * height / 8) bytes in all. 1 is a lit pixel.
+//
+// Meant to be redrawn in place for every frame; nothing here allocates. Drawing
+// outside the bitmap is clipped.
+public final class OledBitmap {
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	public final int width;
+	public final int height;
+	final byte[] pixels;
+	// The frame key Engine reads this resolution from, e.g. image-data-128x36.
+	final String frameKey;
+
+	public OledBitmap(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.pixels = new byte[(width * height + 7) / 8];
+		this.frameKey = "image-data-" + width + "x" + height;
+	}
+
+	public void clear() {
+		for (int i = 0; i < this.pixels.length; i++) {
+			this.pixels[i] = 0;
+		}
+	}
+
+	public void set(int x, int y, boolean lit) {
+		if (x < 0 || y < 0 || x >= this.width || y >= this.height) {
+			return;
+		}
+		int bit = y * this.width + x;
+		int mask = 0x80 >>> (bit & 7);
+		if (lit) {
+			this.pixels[bit >> 3] |= mask;
+		} else {
+			this.pixels[bit >> 3] &= ~mask;
+		}
+	}
+
+	public boolean get(int x, int y) {
+		if (x < 0 || y < 0 || x >= this.width || y >= this.height) {
+			return false;
+		}
+		int bit = y * this.width + x;
+		return (this.pixels[bit >> 3] & (0x80 >>> (bit & 7))) != 0;
+	}
+
+	// Bresenham, both ends included.
+	public void drawLine(int x0, int y0, int x1, int y1, boolean lit) {
+		int dx = Math.abs(x1 - x0);
+		int dy = -Math.abs(y1 - y0);
+		int sx = x0 < x1 ? 1 : -1;
+		int sy = y0 < y1 ? 1 : -1;
+		int err = dx + dy;
+		for (;;) {
+			set(x0, y0, lit);
+			if (x0 == x1 && y0 == y1) {
+				return;
+			}
+			int e2 = 2 * err;
+			if (e2 >= dy) {
+				err += dy;
+				x0 += sx;
+			}
+			if (e2 <= dx) {
+				err += dx;
+				y0 += sy;
+			}
+		}
+	}
+
+	public void drawRect(int x, int y, int width, int height, boolean lit) {
+		drawLine(x, y, x + width - 1, y, lit);
+		drawLine(x, y + height - 1, x + width - 1, y + height - 1, lit);
+		drawLine(x, y, x, y + height - 1, lit);
+		drawLine(x + width - 1, y, x + width - 1, y + height - 1, lit);
+	}
+
+	public void fillRect(int x, int y, int width, int height, boolean lit) {
+		for (int row = y; row < y + height; row++) {
+			for (int col = x; col < x + width; col++) {
+				set(col, row, lit);
+			}
+		}
+	}
+
+	// Midpoint circle outline.
+	public void drawCircle(int cx, int cy, int radius, boolean lit) {
+		int x = radius;
+		int y = 0;
+		int err = 1 - radius;
+		while (x >= y) {
+			set(cx + x, cy + y, lit);
+			set(cx - x, cy + y, lit);
+			set(cx + x, cy - y, lit);
+			set(cx - x, cy - y, lit);
+			set(cx + y, cy + x, lit);
+			set(cx - y, cy + x, lit);
+			set(cx + y, cy - x, lit);
+			set(cx - y, cy - x, lit);
+			y++;
+			if (err < 0) {
+				err += 2 * y + 1;
+			} else {
+				x--;
+				err += 2 * (y - x) + 1;
+			}
+		}
+	}
+
+	// 64 bit FNV-1a over the pixels. Two different images only collide with odds of
+	// about one in 2^64, so equal hashes are taken to mean equal images.
+	public long contentHash() {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0; i < this.pixels.length; i++) {
+			hash = (hash ^ (this.pixels[i] & 0xff)) * FNV_PRIME;
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,9 @@
+package com.sse3.gamesense;
+
+// What the dispatcher does with a new event when its queue is already full.
+public enum OverflowPolicy {
+	// Evict the oldest queued event to make room for the new one.
+	DROP_OLDEST,
+	// Keep what is queued and discard the new event.
+	DROP_NEWEST
+}
@@ -0,0 +1,81 @@
+package com.sse3.gamesense;
+
+// A fixed run of packed 0xRRGGBB colours, worked out once up front so that picking
+// a colour while drawing a frame is an array lookup instead of a blend.
+//
+//   Palette health = Palette.gradient(101, RED, YELLOW, GREEN);
+//   bitmap.fill(health.at(hp, maxHp));
+public final class Palette {
+
+	private final int[] colors;
+
+	private Palette(int[] colors) {
+		this.colors = colors;
+	}
+
+	// size colours blending evenly from the first stop through the others to the last.
+	public static Palette gradient(int size, int... stops) {
+		if (size < 1 || stops.length < 1) {
+			throw new IllegalArgumentException("A palette needs at least one colour");
+		}
+		int[] colors = new int[size];
+		for (int i = 0; i < size; i++) {
+			if (stops.length == 1 || size == 1) {
+				colors[i] = stops[0];
+				continue;
+			}
+			// Position along the stops in 1/(size - 1) steps.
+			int position = i * (stops.length - 1);
+			int segment = Math.min(position / (size - 1), stops.length - 2);
+			int offset = position - segment * (size - 1);
+			colors[i] = blend(stops[segment], stops[segment + 1], offset, size - 1);
+		}
+		return new Palette(colors);
+	}
+
+	// This palette with every colour at percent of its brightness.
+	public Palette scaled(int percent) {
+		int[] colors = new int[this.colors.length];
+		for (int i = 0; i < colors.length; i++) {
+			colors[i] = blend(0, this.colors[i], percent, 100);
+		}
+		return new Palette(colors);
+	}
+
+	// from moved amount/total of the way to to, channel by channel.
+	public static int blend(int from, int to, int amount, int total) {
+		int red = channel(from >>> 16, to >>> 16, amount, total);
+		int green = channel(from >>> 8, to >>> 8, amount, total);
+		int blue = channel(from, to, amount, total);
+		return KeyboardBitmap.rgb(red, green, blue);
+	}
+
+	private static int channel(int from, int to, int amount, int total) {
+		from &= 0xff;
+		to &= 0xff;
+		return from + Math.floorDiv((to - from) * amount + total / 2, total);
+	}
+
+	public int size() {
+		return this.colors.length;
+	}
+
+	// Clamped to the ends of the palette.
+	public int get(int index) {
+		if (index <= 0) {
+			return this.colors[0];
+		}
+		if (index >= this.colors.length) {
+			return this.colors[this.colors.length - 1];
+		}
+		return this.colors[index];
+	}
+
+	// The colour value/max of the way along the palette.
+	public int at(int value, int max) {
+		if (max <= 0) {
+			return this.colors[0];
+		}
+		return get((int) ((long) value * (this.colors.length - 1) / max));
+	}
+}
@@ -0,0 +1,22 @@
+package com.sse3.gamesense;
+
+import net.minecraft.entity.player.EntityPlayer;
+
+// One piece of player state that is sent as a game event whenever it changes.
+//
+// sample() reduces the state to a primitive so that ProbeTable can keep the last value
+// and compare without boxing: ints as they are, booleans as 0 or 1, enums as their
+// ordinal, or several fields packed together. send() turns a sampled value into the
+// event(s) Engine gets.
+public abstract class PlayerProbe {
+	// From GameSenseMod.RegisterGameEvent.
+	public final int handle;
+
+	protected PlayerProbe(int handle) {
+		this.handle = handle;
+	}
+
+	public abstract long sample(EntityPlayer player);
+
+	public abstract void send(GameSenseMod mod, EntityPlayer player, long value);
+}
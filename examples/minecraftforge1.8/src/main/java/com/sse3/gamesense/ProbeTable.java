@@ -0,0 +1,60 @@
+package com.sse3.gamesense;
+
+import java.util.Arrays;
+
+import net.minecraft.entity.player.EntityPlayer;
+
+// The probes sampled every update, with their last values kept side by side in a
+// primitive array so that change detection is a single loop.
+public class ProbeTable {
+	private PlayerProbe[] probes = new PlayerProbe[0];
+	private long[] lastValues = new long[0];
+	// Set for probes skipped because the event profile turned their event off, so
+	// their value is sent as soon as it is turned back on.
+	private boolean[] skipped = new boolean[0];
+	// Send every value on the next update, not just the ones that changed.
+	private boolean forceUpdate = true;
+
+	public void add(PlayerProbe probe) {
+		int index = this.probes.length;
+		this.probes = Arrays.copyOf(this.probes, index + 1);
+		this.lastValues = Arrays.copyOf(this.lastValues, index + 1);
+		this.skipped = Arrays.copyOf(this.skipped, index + 1);
+		this.probes[index] = probe;
+	}
+
+	public int size() {
+		return this.probes.length;
+	}
+
+	public void reset() {
+		this.forceUpdate = true;
+	}
+
+	// Samples every probe and sends the ones whose value changed since the last update,
+	// or all of them after reset(). Probes of events the profile turned off aren't
+	// sampled at all. Returns how many were sent.
+	public int update(GameSenseMod mod, EntityPlayer player) {
+		boolean sendAll = this.forceUpdate;
+		this.forceUpdate = false;
+
+		PlayerProbe[] probes = this.probes;
+		long[] lastValues = this.lastValues;
+		boolean[] skipped = this.skipped;
+		int sent = 0;
+		for (int i = 0; i < probes.length; i++) {
+			if (!mod.IsEventEnabled(probes[i].handle)) {
+				skipped[i] = true;
+				continue;
+			}
+			long value = probes[i].sample(player);
+			if (sendAll || skipped[i] || value != lastValues[i]) {
+				lastValues[i] = value;
+				skipped[i] = false;
+				probes[i].send(mod, player, value);
+				sent++;
+			}
+		}
+		return sent;
+	}
+}
@@ -0,0 +1,63 @@
+package com.sse3.gamesense;
+
+// Decides how many client ticks to wait before sampling the player again, and so how
+// often a tick's events are flushed to Engine, within [minTicks, maxTicks]:
+//
+// - Engine behind (events from earlier samples still queued, or recent round trips
+//   slower than slowRoundTripMs): the interval doubles. Sampling faster would only
+//   pile more updates onto the ones Engine is still working through.
+// - Something the player has to feel right away, like taking damage: minTicks.
+// - Probes changed: half as long, so activity after a quiet spell is back to
+//   minTicks within a few samples.
+// - Nothing changed for IDLE_SAMPLES samples in a row: one tick longer.
+//
+// Client thread only.
+public class SampleScheduler {
+
+	private static final int IDLE_SAMPLES = 5;
+	// Where every world starts: 100ms at 20 ticks per second.
+	private static final int INITIAL_TICKS = 2;
+
+	private final GameSenseMetrics metrics;
+	private final int minTicks;
+	private final int maxTicks;
+	private final long slowRoundTripNanos;
+	private int intervalTicks;
+	private int idleSamples = 0;
+
+	public SampleScheduler(GameSenseMetrics metrics, int minTicks, int maxTicks, int slowRoundTripMs) {
+		this.metrics = metrics;
+		this.minTicks = Math.max(1, minTicks);
+		this.maxTicks = Math.max(this.minTicks, maxTicks);
+		this.slowRoundTripNanos = slowRoundTripMs * 1000000L;
+		reset();
+	}
+
+	public void reset() {
+		this.intervalTicks = Math.min(this.maxTicks, Math.max(this.minTicks, INITIAL_TICKS));
+		this.idleSamples = 0;
+	}
+
+	public int getIntervalTicks() {
+		return this.intervalTicks;
+	}
+
+	// Call after a sample with how many probes it sent, whether it was urgent, and
+	// the queue depth just before it. Returns the ticks until the next sample.
+	public int next(int changed, boolean urgent, int backlog) {
+		if (backlog > 0 || this.metrics.getRecentRoundTripNanos() > this.slowRoundTripNanos) {
+			this.intervalTicks = Math.min(this.maxTicks, this.intervalTicks * 2);
+			this.idleSamples = 0;
+		} else if (urgent) {
+			this.intervalTicks = this.minTicks;
+			this.idleSamples = 0;
+		} else if (changed > 0) {
+			this.intervalTicks = Math.max(this.minTicks, this.intervalTicks / 2);
+			this.idleSamples = 0;
+		} else if (++this.idleSamples >= IDLE_SAMPLES) {
+			this.intervalTicks = Math.min(this.maxTicks, this.intervalTicks + 1);
+			this.idleSamples = 0;
+		}
+		return this.intervalTicks;
+	}
+}
@@ -0,0 +1,34 @@
+package com.sse3.gamesense;
+
+import java.nio.charset.Charset;
+
+import org.json.JSONObject;
+
+// What a held item is as far as the TOOL events go: the TOOL and TOOLMATERIAL values
+// to send for it. Worked out once per Item by ToolRegistry, along with the values
+// already encoded as JSON for the TOOL frame, so switching tools doesn't encode them
+// again.
+public class ToolDescriptor {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	// Anything that isn't a tool, including an empty hand.
+	public static final ToolDescriptor NONE = new ToolDescriptor("NONE", "");
+
+	public final String type;
+	public final String material;
+	// type and material as JSON strings, for EventFrame.putEncoded.
+	final byte[] encodedType;
+	final byte[] encodedMaterial;
+
+	public ToolDescriptor(String type, String material) {
+		this.type = type;
+		this.material = material != null ? material : "";
+		this.encodedType = JSONObject.quote(this.type).getBytes(UTF_8);
+		this.encodedMaterial = JSONObject.quote(this.material).getBytes(UTF_8);
+	}
+
+	public boolean isTool() {
+		return this != NONE;
+	}
+}
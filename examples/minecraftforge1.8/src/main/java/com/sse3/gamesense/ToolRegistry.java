@@ -0,0 +1,93 @@
+package com.sse3.gamesense;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemAxe;
+import net.minecraft.item.ItemHoe;
+import net.minecraft.item.ItemPickaxe;
+import net.minecraft.item.ItemShears;
+import net.minecraft.item.ItemSpade;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.ItemSword;
+import net.minecraft.item.ItemTool;
+
+// Tells which tool an Item is. Items are classified with instanceof, so subclasses
+// and modded tools are recognised too, and the answer is cached per Item instance:
+// each Item is classified once, after that a lookup is one identity hash probe.
+//
+// Other mods can teach it about their items with register(); classifiers registered
+// that way are asked before the built in one.
+public class ToolRegistry {
+
+	public interface Classifier {
+		// The tool the item is, or null to leave it to the next classifier.
+		ToolDescriptor classify(Item item);
+	}
+
+	// Vanilla tools and anything derived from them.
+	private static final Classifier VANILLA = new Classifier() {
+		@Override
+		public ToolDescriptor classify(Item item) {
+			if (item instanceof ItemSword) {
+				return new ToolDescriptor("SWORD", ((ItemSword) item).getToolMaterialName());
+			}
+			if (item instanceof ItemAxe) {
+				return new ToolDescriptor("AXE", ((ItemTool) item).getToolMaterialName());
+			}
+			if (item instanceof ItemPickaxe) {
+				return new ToolDescriptor("PICKAXE", ((ItemTool) item).getToolMaterialName());
+			}
+			if (item instanceof ItemSpade) {
+				return new ToolDescriptor("SHOVEL", ((ItemTool) item).getToolMaterialName());
+			}
+			if (item instanceof ItemHoe) {
+				return new ToolDescriptor("HOE", ((ItemHoe) item).getMaterialName());
+			}
+			if (item instanceof ItemShears) {
+				// Shears are always IRON
+				return new ToolDescriptor("SHEARS", "IRON");
+			}
+			if (item instanceof ItemTool) {
+				// A modded tool that doesn't extend one of the above; Forge knows what it harvests.
+				Set<String> toolClasses = item.getToolClasses(new ItemStack(item));
+				String type = toolClasses == null || toolClasses.isEmpty() ? "TOOL" : toolClasses.iterator().next().toUpperCase();
+				return new ToolDescriptor(type, ((ItemTool) item).getToolMaterialName());
+			}
+			return null;
+		}
+	};
+
+	private final List<Classifier> classifiers = new ArrayList<Classifier>();
+	private final IdentityHashMap<Item, ToolDescriptor> byItem = new IdentityHashMap<Item, ToolDescriptor>();
+
+	public synchronized void register(Classifier classifier) {
+		this.classifiers.add(classifier);
+		// Items seen so far may be classified differently now.
+		this.byItem.clear();
+	}
+
+	// Never null; ToolDescriptor.NONE for items that aren't tools.
+	public synchronized ToolDescriptor get(Item item) {
+		ToolDescriptor tool = this.byItem.get(item);
+		if (tool == null) {
+			tool = classify(item);
+			this.byItem.put(item, tool);
+		}
+		return tool;
+	}
+
+	private ToolDescriptor classify(Item item) {
+		for (int i = 0; i < this.classifiers.size(); i++) {
+			ToolDescriptor tool = this.classifiers.get(i).classify(item);
+			if (tool != null) {
+				return tool;
+			}
+		}
+		ToolDescriptor tool = VANILLA.classify(item);
+		return tool != null ? tool : ToolDescriptor.NONE;
+	}
+}
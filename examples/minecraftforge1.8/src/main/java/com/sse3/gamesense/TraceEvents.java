@@ -0,0 +1,231 @@
+package com.sse3.gamesense;
+
+import java.util.List;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.StackTrace;
+
+// JDK Flight Recorder events for what GameSense does on the client and sender
+// threads, so a recording of a laggy session shows which sends ran when and for
+// how long. They appear under "GameSense" in Java Mission Control.
+//
+// Events are only created while a recording is running; otherwise tracing costs a
+// single volatile read per call site and allocates nothing. The JVM Minecraft runs
+// on may not have jdk.jfr at all (Java 8 only has it since 8u262); then nothing is
+// ever recorded and the event classes are never loaded.
+public class TraceEvents {
+
+	private static volatile boolean recording = false;
+
+	static {
+		try {
+			RecordingWatcher.install();
+		} catch (LinkageError e) {
+			// No jdk.jfr in this JVM.
+		} catch (SecurityException e) {
+			// Not allowed to watch recordings.
+		}
+	}
+
+	// Kept out of TraceEvents itself, whose verification would otherwise already need
+	// jdk.jfr.
+	private static class RecordingWatcher implements FlightRecorderListener {
+		static void install() {
+			if (FlightRecorder.isAvailable()) {
+				FlightRecorder.addListener(new RecordingWatcher());
+				update();
+			}
+		}
+
+		@Override
+		public void recorderInitialized(FlightRecorder recorder) {
+			update();
+		}
+
+		@Override
+		public void recordingStateChanged(Recording changed) {
+			update();
+		}
+
+		private static void update() {
+			boolean running = false;
+			if (FlightRecorder.isInitialized()) {
+				for (Recording candidate : FlightRecorder.getFlightRecorder().getRecordings()) {
+					if (candidate.getState() == RecordingState.RUNNING) {
+						running = true;
+					}
+				}
+			}
+			recording = running;
+		}
+	}
+
+	// The begin methods return null while not recording, and the end methods then do
+	// nothing, so call sites need no checks of their own.
+
+	static Sample beginSample() {
+		if (!recording) {
+			return null;
+		}
+		Sample trace = new Sample();
+		trace.begin();
+		return trace;
+	}
+
+	static void endSample(Sample trace, int probes, int sent) {
+		if (trace != null) {
+			trace.probes = probes;
+			trace.sent = sent;
+			trace.commit();
+		}
+	}
+
+	static Enqueue beginEnqueue(GameEvent event) {
+		if (!recording) {
+			return null;
+		}
+		Enqueue trace = new Enqueue();
+		trace.eventName = event.name;
+		trace.begin();
+		return trace;
+	}
+
+	static void endEnqueue(Enqueue trace, String outcome) {
+		if (trace != null) {
+			trace.outcome = outcome;
+			trace.commit();
+		}
+	}
+
+	static Encode beginEncode() {
+		if (!recording) {
+			return null;
+		}
+		Encode trace = new Encode();
+		trace.begin();
+		return trace;
+	}
+
+	static void endEncode(Encode trace, List<GameEvent> events, int from, int to, int payloadSize) {
+		if (trace != null) {
+			trace.end();
+			trace.eventNames = eventNames(events, from, to);
+			trace.payloadSize = payloadSize;
+			trace.commit();
+		}
+	}
+
+	// Ended by endExchange once Engine answers, possibly much later.
+	static HttpExchange beginExchange(String path, List<GameEvent> events, int from, int to, int payloadSize) {
+		if (!recording) {
+			return null;
+		}
+		HttpExchange trace = new HttpExchange();
+		trace.path = path;
+		trace.eventNames = eventNames(events, from, to);
+		trace.payloadSize = payloadSize;
+		trace.begin();
+		return trace;
+	}
+
+	static void endExchange(HttpExchange trace, int status, String outcome) {
+		if (trace != null) {
+			trace.status = status;
+			trace.outcome = outcome;
+			trace.commit();
+		}
+	}
+
+	// The names of events[from..to), comma separated.
+	private static String eventNames(List<GameEvent> events, int from, int to) {
+		if (events == null || from >= to) {
+			return "";
+		}
+		if (to - from == 1) {
+			return events.get(from).name;
+		}
+		StringBuilder names = new StringBuilder();
+		for (int i = from; i < to; i++) {
+			if (i > from) {
+				names.append(',');
+			}
+			names.append(events.get(i).name);
+		}
+		return names.toString();
+	}
+
+	@Name("com.sse3.gamesense.Sample")
+	@Label("Sample")
+	@Category("GameSense")
+	@Description("Sampling the player and sending what changed, on the client thread")
+	@StackTrace(false)
+	static class Sample extends Event {
+		@Label("Probes")
+		int probes;
+
+		@Label("Events Sent")
+		int sent;
+	}
+
+	@Name("com.sse3.gamesense.Enqueue")
+	@Label("Enqueue")
+	@Category("GameSense")
+	@Description("One SendGameEvent call: storing the value and handing the event to the sender thread")
+	@StackTrace(false)
+	static class Enqueue extends Event {
+		@Label("Event")
+		String eventName;
+
+		@Label("Outcome")
+		@Description("queued, dropped (queue full), throttled (held back by its limit) or circuit open (Engine unreachable)")
+		String outcome;
+	}
+
+	@Name("com.sse3.gamesense.Encode")
+	@Label("Encode")
+	@Category("GameSense")
+	@Description("Encoding a request body on the sender thread")
+	@StackTrace(false)
+	static class Encode extends Event {
+		@Label("Events")
+		String eventNames;
+
+		@Label("Payload Size")
+		@DataAmount
+		int payloadSize;
+	}
+
+	@Name("com.sse3.gamesense.HttpExchange")
+	@Label("HTTP Exchange")
+	@Category("GameSense")
+	@Description("A request to SteelSeries Engine, from posting it until its answer or failure")
+	@StackTrace(false)
+	static class HttpExchange extends Event {
+		@Label("Path")
+		String path;
+
+		@Label("Events")
+		String eventNames;
+
+		@Label("Payload Size")
+		@DataAmount
+		int payloadSize;
+
+		@Label("Status")
+		@Description("HTTP status, 0 if there was no answer")
+		int status;
+
+		@Label("Outcome")
+		@Description("ok, http error, lost (connection failed or timed out) or not sent")
+		String outcome;
+	}
+}
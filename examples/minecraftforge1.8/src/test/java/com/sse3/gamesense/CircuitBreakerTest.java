@@ -0,0 +1,93 @@
+package com.sse3.gamesense;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+	private static final long MS = 1000000L;
+
+	@Test
+	public void opensAfterThresholdFailuresInARow() {
+		CircuitBreaker breaker = new CircuitBreaker(3, 1000, 8000);
+		assertFalse(breaker.onFailure(0));
+		assertFalse(breaker.onFailure(0));
+		assertTrue(breaker.isClosed());
+		assertTrue(breaker.onFailure(0));
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertFalse(breaker.isClosed());
+		// Requests that were in flight when it opened don't count as a new outage.
+		assertFalse(breaker.onFailure(0));
+	}
+
+	@Test
+	public void successResetsFailureCount() {
+		CircuitBreaker breaker = new CircuitBreaker(3, 1000, 8000);
+		breaker.onFailure(0);
+		breaker.onFailure(0);
+		assertFalse(breaker.onSuccess());
+		breaker.onFailure(0);
+		breaker.onFailure(0);
+		assertTrue(breaker.isClosed());
+	}
+
+	@Test
+	public void probesOnceBackoffExpired() {
+		CircuitBreaker breaker = new CircuitBreaker(1, 1000, 8000);
+		breaker.onFailure(0);
+		// The jittered backoff is between half and all of 1000ms.
+		assertFalse(breaker.tryProbe(499 * MS));
+		assertTrue(breaker.tryProbe(1000 * MS));
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		// Only one probe at a time.
+		assertFalse(breaker.tryProbe(2000 * MS));
+	}
+
+	@Test
+	public void successfulProbeCloses() {
+		CircuitBreaker breaker = new CircuitBreaker(1, 1000, 8000);
+		breaker.onFailure(0);
+		breaker.tryProbe(1000 * MS);
+		assertTrue(breaker.onSuccess());
+		assertTrue(breaker.isClosed());
+		assertFalse(breaker.onSuccess());
+	}
+
+	@Test
+	public void failedProbeReopensWithLongerBackoff() {
+		CircuitBreaker breaker = new CircuitBreaker(1, 1000, 8000);
+		breaker.onFailure(0);
+		long now = 1000 * MS;
+		assertTrue(breaker.tryProbe(now));
+		// Not a new outage, so no second chat message.
+		assertFalse(breaker.onFailure(now));
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		// Now between 1000ms and 2000ms.
+		assertFalse(breaker.tryProbe(now + 999 * MS));
+		assertTrue(breaker.tryProbe(now + 2000 * MS));
+	}
+
+	@Test
+	public void backoffStopsGrowingAtMax() {
+		CircuitBreaker breaker = new CircuitBreaker(1, 1000, 1500);
+		long now = 0;
+		breaker.onFailure(now);
+		for (int i = 0; i < 10; i++) {
+			now += 1500 * MS;
+			assertTrue(breaker.tryProbe(now));
+			breaker.onFailure(now);
+		}
+	}
+
+	@Test
+	public void probeNowSkipsBackoff() {
+		CircuitBreaker breaker = new CircuitBreaker(1, 60000, 60000);
+		breaker.onFailure(0);
+		assertFalse(breaker.tryProbe(MS));
+		breaker.probeNow(MS);
+		assertTrue(breaker.tryProbe(MS));
+	}
+}
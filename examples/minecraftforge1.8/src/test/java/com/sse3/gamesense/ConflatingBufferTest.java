@@ -0,0 +1,161 @@
+package com.sse3.gamesense;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConflatingBufferTest {
+
+	private static final long SECOND = 1000000000L;
+
+	private EventRegistry registry;
+	private GameSenseMetrics metrics;
+	private GameEvent health;
+	private GameEvent armor;
+	private GameEvent air;
+	private GameEvent start;
+
+	@Before
+	public void setUp() {
+		this.registry = new EventRegistry();
+		this.metrics = new GameSenseMetrics();
+		this.health = this.registry.register("HEALTH");
+		this.armor = this.registry.register("ARMOR");
+		this.air = this.registry.register("AIRLEVEL");
+		this.start = this.registry.register("START");
+		this.start.setPriority(DispatchPriority.CRITICAL);
+	}
+
+	private ConflatingBuffer buffer(int capacity, OverflowPolicy policy, long criticalDeadlineNanos) {
+		return new ConflatingBuffer(this.registry, capacity, policy, criticalDeadlineNanos, this.metrics);
+	}
+
+	@Test
+	public void conflatesPendingEvent() {
+		ConflatingBuffer buffer = buffer(4, OverflowPolicy.DROP_OLDEST, SECOND);
+		buffer.put(this.health);
+		buffer.put(this.health);
+		assertEquals(1, buffer.size());
+		assertEquals(1, this.metrics.getCoalesced());
+		assertSame(this.health, buffer.poll());
+		assertNull(buffer.poll());
+		assertTrue(buffer.isEmpty());
+
+		// Taken out, so the next put queues it again.
+		buffer.put(this.health);
+		assertSame(this.health, buffer.poll());
+	}
+
+	@Test
+	public void criticalGoesFirst() {
+		ConflatingBuffer buffer = buffer(4, OverflowPolicy.DROP_OLDEST, SECOND);
+		buffer.put(this.health);
+		buffer.put(this.start);
+		assertSame(this.start, buffer.poll());
+		assertSame(this.health, buffer.poll());
+	}
+
+	@Test
+	public void criticalDroppedPastDeadline() throws InterruptedException {
+		ConflatingBuffer buffer = buffer(4, OverflowPolicy.DROP_OLDEST, 1000000L);
+		buffer.put(this.start);
+		buffer.put(this.health);
+		Thread.sleep(10);
+		assertSame(this.health, buffer.poll());
+		assertNull(buffer.poll());
+		assertEquals(1, this.metrics.getDropped());
+	}
+
+	@Test
+	public void retryKeepsDeadline() throws InterruptedException {
+		ConflatingBuffer buffer = buffer(4, OverflowPolicy.DROP_OLDEST, 50000000L);
+		buffer.put(this.start);
+		assertSame(this.start, buffer.poll());
+		Thread.sleep(60);
+		assertTrue(buffer.retry(this.start));
+		assertNull(buffer.poll());
+
+		// A new value gets a new deadline.
+		buffer.put(this.start);
+		assertSame(this.start, buffer.poll());
+	}
+
+	@Test
+	public void dropOldestEvictsLongestWaiting() {
+		ConflatingBuffer buffer = buffer(2, OverflowPolicy.DROP_OLDEST, SECOND);
+		assertTrue(buffer.put(this.health));
+		assertTrue(buffer.put(this.armor));
+		assertTrue(buffer.put(this.air));
+		assertEquals(1, this.metrics.getDropped());
+		assertSame(this.armor, buffer.poll());
+		assertSame(this.air, buffer.poll());
+		assertNull(buffer.poll());
+
+		// The evicted event isn't stuck as pending.
+		buffer.put(this.health);
+		assertSame(this.health, buffer.poll());
+	}
+
+	@Test
+	public void dropNewestRejectsNewEvent() {
+		ConflatingBuffer buffer = buffer(2, OverflowPolicy.DROP_NEWEST, SECOND);
+		assertTrue(buffer.put(this.health));
+		assertTrue(buffer.put(this.armor));
+		assertFalse(buffer.put(this.air));
+		assertEquals(1, this.metrics.getDropped());
+		assertSame(this.health, buffer.poll());
+		assertSame(this.armor, buffer.poll());
+		assertNull(buffer.poll());
+
+		buffer.put(this.air);
+		assertSame(this.air, buffer.poll());
+	}
+
+	@Test
+	public void fullTelemetryLaneLeavesCriticalAlone() {
+		ConflatingBuffer buffer = buffer(2, OverflowPolicy.DROP_OLDEST, SECOND);
+		buffer.put(this.start);
+		buffer.put(this.health);
+		buffer.put(this.armor);
+		buffer.put(this.air);
+		assertSame(this.start, buffer.poll());
+		assertSame(this.armor, buffer.poll());
+		assertSame(this.air, buffer.poll());
+	}
+
+	@Test
+	public void requeueAllLeavesOutOneOffEvents() {
+		ConflatingBuffer buffer = buffer(8, OverflowPolicy.DROP_OLDEST, SECOND);
+		this.health.setInt(20);
+		this.start.setBoolean(true);
+		this.start.setResync(false);
+		// No value yet, nothing to resend.
+		this.armor.setResync(true);
+
+		buffer.requeueAll();
+		assertSame(this.health, buffer.poll());
+		assertNull(buffer.poll());
+	}
+
+	@Test
+	public void requeueAllDemotesCriticalPastDeadline() throws InterruptedException {
+		ConflatingBuffer buffer = buffer(8, OverflowPolicy.DROP_OLDEST, 1000000L);
+		this.air.setPriority(DispatchPriority.CRITICAL);
+		this.air.setInt(300);
+		this.health.setInt(20);
+		buffer.put(this.air);
+		assertSame(this.air, buffer.poll());
+		Thread.sleep(10);
+
+		// Still the current state, so it is resent, just not as critical.
+		buffer.requeueAll();
+		assertSame(this.health, buffer.poll());
+		assertSame(this.air, buffer.poll());
+		assertEquals(0, this.metrics.getDropped());
+	}
+}
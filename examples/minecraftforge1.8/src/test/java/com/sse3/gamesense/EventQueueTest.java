@@ -0,0 +1,116 @@
+package com.sse3.gamesense;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class EventQueueTest {
+
+	@Test
+	public void roundsCapacityUpToPowerOfTwo() {
+		assertEquals(2, new EventQueue<Integer>(2).capacity());
+		assertEquals(8, new EventQueue<Integer>(5).capacity());
+		assertEquals(8, new EventQueue<Integer>(8).capacity());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsCapacityBelowTwo() {
+		new EventQueue<Integer>(1);
+	}
+
+	@Test
+	public void emptyQueuePollsNull() {
+		EventQueue<Integer> queue = new EventQueue<Integer>(4);
+		assertTrue(queue.isEmpty());
+		assertEquals(0, queue.size());
+		assertNull(queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void fullQueueRejectsOfferUntilPolled() {
+		EventQueue<Integer> queue = new EventQueue<Integer>(4);
+		for (int i = 0; i < 4; i++) {
+			assertTrue(queue.offer(i));
+		}
+		assertFalse(queue.offer(4));
+		assertEquals(4, queue.size());
+
+		assertEquals(Integer.valueOf(0), queue.poll());
+		assertTrue(queue.offer(4));
+		assertFalse(queue.offer(5));
+		for (int i = 1; i <= 4; i++) {
+			assertEquals(Integer.valueOf(i), queue.poll());
+		}
+		assertNull(queue.poll());
+	}
+
+	@Test
+	public void wrapsAroundInOrder() {
+		EventQueue<Integer> queue = new EventQueue<Integer>(4);
+		int next = 0;
+		int expected = 0;
+		// Three at a time, so every lap starts at a different slot.
+		for (int lap = 0; lap < 20; lap++) {
+			for (int i = 0; i < 3; i++) {
+				assertTrue(queue.offer(next++));
+			}
+			for (int i = 0; i < 3; i++) {
+				assertEquals(Integer.valueOf(expected++), queue.poll());
+			}
+			assertTrue(queue.isEmpty());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void concurrentProducersAndConsumersLoseNothing() throws InterruptedException {
+		final EventQueue<Integer> queue = new EventQueue<Integer>(16);
+		final int perProducer = 100000;
+		final AtomicLong polled = new AtomicLong();
+		final AtomicLong sum = new AtomicLong();
+
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < 2; t++) {
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 1; i <= perProducer; i++) {
+						while (!queue.offer(i)) {
+							Thread.yield();
+						}
+					}
+				}
+			});
+		}
+		for (int t = 2; t < 4; t++) {
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					while (polled.get() < 2 * perProducer) {
+						Integer value = queue.poll();
+						if (value == null) {
+							Thread.yield();
+							continue;
+						}
+						sum.addAndGet(value);
+						polled.incrementAndGet();
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(2L * perProducer * (perProducer + 1) / 2, sum.get());
+		assertTrue(queue.isEmpty());
+	}
+}
@@ -0,0 +1,127 @@
+package com.sse3.gamesense;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class EventThrottleTest {
+
+	private static final long MS = 1000000L;
+	// Any fixed point works, as long as the throttle never sees the real clock.
+	private static final long T0 = 1000000 * MS;
+
+	private final List<GameEvent> queued = new ArrayList<GameEvent>();
+	private final EventThrottle.Sink sink = new EventThrottle.Sink() {
+		@Override
+		public void queue(GameEvent event) {
+			EventThrottleTest.this.queued.add(event);
+		}
+	};
+
+	private EventRegistry registry;
+	private GameEvent air;
+	private GameEvent health;
+
+	@Before
+	public void setUp() {
+		this.registry = new EventRegistry();
+		this.air = this.registry.register("AIRLEVEL");
+		this.health = this.registry.register("HEALTH");
+	}
+
+	private EventThrottle throttle(String... specs) {
+		EventThrottle throttle = new EventThrottle(specs, 500);
+		throttle.release(T0, this.sink);
+		return throttle;
+	}
+
+	@Test
+	public void eventsWithoutLimitPassThrough() {
+		EventThrottle throttle = throttle("AIRLEVEL=1,50");
+		for (int i = 0; i < 10; i++) {
+			assertTrue(throttle.admitInt(this.health, i));
+			assertTrue(throttle.admit(this.health));
+		}
+	}
+
+	@Test
+	public void maxHzHoldsValueUntilTokenRefills() {
+		// One send every 100ms.
+		EventThrottle throttle = throttle("AIRLEVEL=10,0");
+		assertTrue(throttle.admit(this.air));
+		assertFalse(throttle.admit(this.air));
+		assertFalse(throttle.admit(this.air));
+
+		throttle.release(T0 + 50 * MS, this.sink);
+		assertEquals(0, this.queued.size());
+		throttle.release(T0 + 120 * MS, this.sink);
+		assertEquals(1, this.queued.size());
+		assertSame(this.air, this.queued.get(0));
+		// Released only once.
+		throttle.release(T0 + 300 * MS, this.sink);
+		assertEquals(1, this.queued.size());
+	}
+
+	@Test
+	public void admitUsesTimeOfLastRelease() {
+		EventThrottle throttle = throttle("AIRLEVEL=10,0");
+		assertTrue(throttle.admit(this.air));
+		throttle.release(T0 + 150 * MS, this.sink);
+		assertTrue(throttle.admit(this.air));
+		assertFalse(throttle.admit(this.air));
+	}
+
+	@Test
+	public void deadbandHoldsSmallChanges() {
+		EventThrottle throttle = throttle("AIRLEVEL=0,5");
+		assertTrue(throttle.admitInt(this.air, 100));
+		assertFalse(throttle.admitInt(this.air, 104));
+		assertFalse(throttle.admitInt(this.air, 96));
+		assertTrue(throttle.admitInt(this.air, 105));
+		// Measured from the last value sent, 105.
+		assertFalse(throttle.admitInt(this.air, 101));
+	}
+
+	@Test
+	public void deadbandReleasesSettledValue() {
+		EventThrottle throttle = throttle("AIRLEVEL=0,5");
+		assertTrue(throttle.admitInt(this.air, 100));
+		assertFalse(throttle.admitInt(this.air, 102));
+
+		throttle.release(T0 + 400 * MS, this.sink);
+		assertEquals(0, this.queued.size());
+		throttle.release(T0 + 500 * MS, this.sink);
+		assertEquals(1, this.queued.size());
+
+		// 102 counts as sent now.
+		assertFalse(throttle.admitInt(this.air, 106));
+		assertTrue(throttle.admitInt(this.air, 107));
+	}
+
+	@Test
+	public void reconfigureQueuesHeldValues() {
+		EventThrottle throttle = throttle("AIRLEVEL=1,0");
+		assertTrue(throttle.admit(this.air));
+		assertFalse(throttle.admit(this.air));
+
+		throttle.reconfigure(new String[0], this.sink);
+		assertEquals(1, this.queued.size());
+		assertTrue(throttle.admit(this.air));
+		assertTrue(throttle.admit(this.air));
+	}
+
+	@Test
+	public void malformedLimitsAreIgnored() {
+		EventThrottle throttle = throttle("AIRLEVEL", "HEALTH=fast", "=1,0");
+		assertTrue(throttle.admit(this.air));
+		assertTrue(throttle.admit(this.air));
+		assertTrue(throttle.admit(this.health));
+	}
+}
@@ -0,0 +1,210 @@
+package com.sse3.gamesense;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NioHttpTransportTest {
+
+	private static final Charset US_ASCII = Charset.forName("US-ASCII");
+	private static final byte[] BODY = "{}".getBytes(US_ASCII);
+	private static final long SECOND = 1000000000L;
+
+	// Accepts one connection, reads the given number of requests and then writes the
+	// given parts one by one, pausing in between so each arrives in its own read.
+	private static class ScriptedEngine extends Thread {
+		final ServerSocket server;
+		final int requests;
+		final String[] parts;
+		volatile String failure = null;
+
+		ScriptedEngine(int requests, String... parts) throws IOException {
+			this.server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+			this.requests = requests;
+			this.parts = parts;
+			setDaemon(true);
+		}
+
+		InetSocketAddress getAddress() {
+			return new InetSocketAddress(this.server.getInetAddress(), this.server.getLocalPort());
+		}
+
+		@Override
+		public void run() {
+			try {
+				Socket socket = this.server.accept();
+				InputStream in = socket.getInputStream();
+				for (int i = 0; i < this.requests; i++) {
+					readRequest(in);
+				}
+				OutputStream out = socket.getOutputStream();
+				for (String part : this.parts) {
+					out.write(part.getBytes(US_ASCII));
+					out.flush();
+					Thread.sleep(20);
+				}
+				// Keep the connection open until the test is done with it.
+				while (in.read() >= 0) {
+				}
+				socket.close();
+			} catch (Exception e) {
+				this.failure = e.toString();
+			}
+		}
+
+		void close() throws IOException {
+			this.server.close();
+		}
+
+		private static void readRequest(InputStream in) throws IOException {
+			int contentLength = 0;
+			String line;
+			while ((line = readLine(in)).length() > 0) {
+				if (line.toLowerCase().startsWith("content-length:")) {
+					contentLength = Integer.parseInt(line.substring(15).trim());
+				}
+			}
+			for (int i = 0; i < contentLength; i++) {
+				if (in.read() < 0) {
+					throw new IOException("request cut short");
+				}
+			}
+		}
+
+		private static String readLine(InputStream in) throws IOException {
+			StringBuilder line = new StringBuilder();
+			int c;
+			while ((c = in.read()) != '\n') {
+				if (c < 0) {
+					throw new IOException("request cut short");
+				}
+				if (c != '\r') {
+					line.append((char) c);
+				}
+			}
+			return line.toString();
+		}
+	}
+
+	private final List<String> outcomes = new ArrayList<String>();
+	private final EngineTransport.Listener listener = new EngineTransport.Listener() {
+		@Override
+		public void onResponse(int tag, int status, long roundTripNanos) {
+			NioHttpTransportTest.this.outcomes.add(tag + ":" + status);
+		}
+
+		@Override
+		public void onFailure(int tag) {
+			NioHttpTransportTest.this.outcomes.add(tag + ":lost");
+		}
+
+		@Override
+		public void onConnected(InetSocketAddress address) {
+		}
+
+		@Override
+		public void onConnectFailed(IOException cause) {
+			NioHttpTransportTest.this.outcomes.add("connect failed");
+		}
+	};
+
+	private NioHttpTransport transport;
+	private ScriptedEngine engine;
+
+	@Before
+	public void setUp() throws IOException {
+		this.transport = new NioHttpTransport(1000, 1000);
+		this.transport.setListener(this.listener);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		this.transport.close();
+		if (this.engine != null) {
+			this.engine.close();
+		}
+	}
+
+	private void start(int requests, String... parts) throws IOException {
+		this.engine = new ScriptedEngine(requests, parts);
+		this.engine.start();
+		this.transport.setAddress(this.engine.getAddress());
+	}
+
+	private void post(int tag) {
+		assertTrue(this.transport.post("/game_event", BODY, BODY.length, tag));
+	}
+
+	private void assertOutcomes(String... expected) {
+		this.transport.awaitResponses(5 * SECOND);
+		assertEquals(null, this.engine.failure);
+		assertEquals(Arrays.asList(expected), this.outcomes);
+		assertEquals(0, this.transport.getInFlightCount());
+	}
+
+	@Test(timeout = 10000)
+	public void pipelinedResponsesInOneRead() throws IOException {
+		start(3,
+				"HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n"
+				+ "HTTP/1.1 404 Not Found\r\nContent-Length: 9\r\n\r\nnot found"
+				+ "HTTP/1.1 500 Internal Server Error\r\ncontent-length: 2\r\n\r\n{}");
+		post(1);
+		post(2);
+		post(3);
+		assertOutcomes("1:200", "2:404", "3:500");
+	}
+
+	@Test(timeout = 10000)
+	public void responseSplitAcrossReads() throws IOException {
+		start(2,
+				"HTTP/1.1 2",
+				"00 OK\r\nContent-Le",
+				"ngth: 11\r\n\r",
+				"\nhello",
+				" worldHTTP/1.1 204 No Content\r\n",
+				"Content-Length: 0\r\n\r\n");
+		post(1);
+		post(2);
+		assertOutcomes("1:200", "2:204");
+	}
+
+	@Test(timeout = 10000)
+	public void chunkedBodies() throws IOException {
+		start(2,
+				"HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+				+ "5\r\nhello\r\nb;ext=1\r\n, chunked!!\r\n0\r\nX-Trailer: yes\r\n\r\n",
+				"HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n4\r\n",
+				"{}{}\r\n",
+				"0\r\n\r\n");
+		post(1);
+		post(2);
+		assertOutcomes("1:200", "2:200");
+	}
+
+	@Test(timeout = 10000)
+	public void unansweredRequestsFailInOrder() throws IOException {
+		this.transport.close();
+		this.transport = new NioHttpTransport(1000, 100);
+		this.transport.setListener(this.listener);
+		start(2, "HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n");
+		post(1);
+		post(2);
+		post(3);
+		assertOutcomes("1:200", "2:lost", "3:lost");
+	}
+}
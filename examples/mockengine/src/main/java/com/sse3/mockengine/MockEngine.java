@@ -0,0 +1,414 @@
+package com.sse3.mockengine;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A stand-in for SteelSeries Engine's GameSense HTTP server, for trying out and
+// load testing a client without Engine. It answers the GameSense endpoints, writes
+// its address to a coreProps.json like Engine does, and can be told to be slow,
+// to fail requests and to reset connections.
+//
+// Every request it receives can be recorded, one JSON object per line with the time
+// it arrived, the path and the request body.
+//
+// Run without arguments for the list of options.
+public class MockEngine {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final String[] ENDPOINTS = { "/game_event", "/multiple_game_events", "/supports_multiple_game_events",
+			"/game_heartbeat", "/register_game_event", "/bind_game_event", "/game_metadata", "/remove_game_event",
+			"/remove_game" };
+
+	private int port = 0;
+	private String corePropsPath = null;
+	private int latencyMillis = 0;
+	private int jitterMillis = 0;
+	private double errorRate = 0;
+	private double resetRate = 0;
+	private boolean multipleEvents = true;
+	private String recordPath = null;
+	private int statsSeconds = 10;
+	private long seed = System.nanoTime();
+
+	private ServerSocket server;
+	private Random random;
+	private Writer record = null;
+
+	private final AtomicLong[] requests = new AtomicLong[ENDPOINTS.length];
+	private final AtomicLong events = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong resets = new AtomicLong();
+	private final AtomicLong connections = new AtomicLong();
+
+	public static void main(String[] args) throws IOException {
+		MockEngine engine = new MockEngine();
+		if (!engine.parseArgs(args)) {
+			printUsage();
+			System.exit(1);
+		}
+		engine.run();
+	}
+
+	private static void printUsage() {
+		System.out.println("Usage: MockEngine [options]");
+		System.out.println("  --port <n>           port to listen on, 0 picks a free one (default 0)");
+		System.out.println("  --coreprops <path>   write {\"address\":\"127.0.0.1:<port>\"} to this file");
+		System.out.println("  --latency <ms>       delay before every response (default 0)");
+		System.out.println("  --jitter <ms>        random extra delay of up to this much (default 0)");
+		System.out.println("  --error-rate <0-1>   fraction of requests answered with 500 (default 0)");
+		System.out.println("  --reset-rate <0-1>   fraction of requests answered by resetting the connection (default 0)");
+		System.out.println("  --no-multiple        act like an Engine without /multiple_game_events");
+		System.out.println("  --record <path>      append every request to this file, one JSON object per line");
+		System.out.println("  --stats <s>          print request counts every this many seconds, 0 for never (default 10)");
+		System.out.println("  --seed <n>           seed for the latency, error and reset dice");
+	}
+
+	private boolean parseArgs(String[] args) {
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("--no-multiple")) {
+					this.multipleEvents = false;
+				} else if (i + 1 < args.length) {
+					String value = args[++i];
+					if (arg.equals("--port")) {
+						this.port = Integer.parseInt(value);
+					} else if (arg.equals("--coreprops")) {
+						this.corePropsPath = value;
+					} else if (arg.equals("--latency")) {
+						this.latencyMillis = Integer.parseInt(value);
+					} else if (arg.equals("--jitter")) {
+						this.jitterMillis = Integer.parseInt(value);
+					} else if (arg.equals("--error-rate")) {
+						this.errorRate = Double.parseDouble(value);
+					} else if (arg.equals("--reset-rate")) {
+						this.resetRate = Double.parseDouble(value);
+					} else if (arg.equals("--record")) {
+						this.recordPath = value;
+					} else if (arg.equals("--stats")) {
+						this.statsSeconds = Integer.parseInt(value);
+					} else if (arg.equals("--seed")) {
+						this.seed = Long.parseLong(value);
+					} else {
+						return false;
+					}
+				} else {
+					return false;
+				}
+			}
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		return true;
+	}
+
+	private void run() throws IOException {
+		this.random = new Random(this.seed);
+		for (int i = 0; i < this.requests.length; i++) {
+			this.requests[i] = new AtomicLong();
+		}
+		if (this.recordPath != null) {
+			this.record = new OutputStreamWriter(new FileOutputStream(this.recordPath, true), UTF_8);
+		}
+
+		this.server = new ServerSocket(this.port, 50, InetAddress.getLoopbackAddress());
+		String address = "127.0.0.1:" + this.server.getLocalPort();
+		System.out.println("Mock SteelSeries Engine listening on " + address);
+		if (this.corePropsPath != null) {
+			writeCoreProps(address);
+		}
+		if (this.statsSeconds > 0) {
+			startStats();
+		}
+
+		for (;;) {
+			final Socket socket = this.server.accept();
+			this.connections.incrementAndGet();
+			Thread connection = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					serve(socket);
+				}
+			}, "Connection " + socket.getRemoteSocketAddress());
+			connection.setDaemon(true);
+			connection.start();
+		}
+	}
+
+	// Written to a temporary file and renamed, so a client polling the file never sees half of it.
+	private void writeCoreProps(String address) throws IOException {
+		File target = new File(this.corePropsPath);
+		File temp = new File(target.getPath() + ".tmp");
+		Writer out = new OutputStreamWriter(new FileOutputStream(temp), UTF_8);
+		try {
+			out.write("{\"address\":\"" + address + "\"}");
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(target)) {
+			target.delete();
+			if (!temp.renameTo(target)) {
+				throw new IOException("Couldn't write " + target);
+			}
+		}
+		System.out.println("Wrote " + target);
+	}
+
+	private void startStats() {
+		Thread stats = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (;;) {
+					try {
+						Thread.sleep(MockEngine.this.statsSeconds * 1000L);
+					} catch (InterruptedException e) {
+						return;
+					}
+					printStats();
+				}
+			}
+		}, "Stats");
+		stats.setDaemon(true);
+		stats.start();
+	}
+
+	private void printStats() {
+		StringBuilder line = new StringBuilder();
+		line.append("connections=").append(this.connections.get());
+		for (int i = 0; i < ENDPOINTS.length; i++) {
+			long count = this.requests[i].get();
+			if (count > 0) {
+				line.append(' ').append(ENDPOINTS[i].substring(1)).append('=').append(count);
+			}
+		}
+		line.append(" events=").append(this.events.get());
+		line.append(" errors=").append(this.errors.get());
+		line.append(" resets=").append(this.resets.get());
+		System.out.println(line);
+	}
+
+	// One request at a time per connection, in order, which also answers pipelined
+	// requests correctly.
+	private void serve(Socket socket) {
+		try {
+			socket.setTcpNoDelay(true);
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			OutputStream out = socket.getOutputStream();
+			Request request = new Request();
+			while (request.read(in)) {
+				long arrived = System.currentTimeMillis();
+				int endpoint = endpointIndex(request.path);
+				if (endpoint >= 0) {
+					this.requests[endpoint].incrementAndGet();
+				}
+				record(arrived, request);
+
+				delay();
+				if (roll(this.resetRate)) {
+					this.resets.incrementAndGet();
+					// SO_LINGER 0 makes close() send a RST instead of a FIN.
+					socket.setSoLinger(true, 0);
+					socket.close();
+					return;
+				}
+				respond(out, request, endpoint);
+				if (request.close) {
+					break;
+				}
+			}
+		} catch (SocketException e) {
+			// The client went away.
+		} catch (IOException e) {
+			System.out.println("Connection failed: " + e);
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private void respond(OutputStream out, Request request, int endpoint) throws IOException {
+		int status;
+		String body;
+		if (!request.method.equals("POST") || endpoint < 0) {
+			status = 404;
+			body = "{\"error\":\"Not found\"}";
+		} else if (!this.multipleEvents && (request.path.equals("/multiple_game_events")
+				|| request.path.equals("/supports_multiple_game_events"))) {
+			status = 404;
+			body = "{\"error\":\"Not found\"}";
+		} else if (!request.body.contains("\"game\"")) {
+			status = 400;
+			body = "{\"error\":\"game is required\"}";
+		} else if (roll(this.errorRate)) {
+			this.errors.incrementAndGet();
+			status = 500;
+			body = "{\"error\":\"Injected failure\"}";
+		} else {
+			status = 200;
+			body = "{}";
+			this.events.addAndGet(countEvents(request));
+		}
+
+		byte[] content = body.getBytes(UTF_8);
+		String head = "HTTP/1.1 " + status + (status == 200 ? " OK" : status == 404 ? " Not Found" : status == 400 ? " Bad Request" : " Internal Server Error")
+				+ "\r\nContent-Type: application/json\r\nContent-Length: " + content.length
+				+ (request.close ? "\r\nConnection: close" : "") + "\r\n\r\n";
+		out.write(head.getBytes(UTF_8));
+		out.write(content);
+		out.flush();
+	}
+
+	private static int countEvents(Request request) {
+		if (request.path.equals("/game_event")) {
+			return 1;
+		}
+		if (!request.path.equals("/multiple_game_events")) {
+			return 0;
+		}
+		// Good enough for counting: every event object has exactly one "event" key.
+		int count = 0;
+		for (int i = request.body.indexOf("\"event\""); i >= 0; i = request.body.indexOf("\"event\"", i + 1)) {
+			count++;
+		}
+		return count;
+	}
+
+	private void record(long arrived, Request request) throws IOException {
+		if (this.record == null) {
+			return;
+		}
+		String body = request.body.trim();
+		if (!body.startsWith("{")) {
+			body = "null";
+		}
+		synchronized (this.record) {
+			this.record.write("{\"time\":" + arrived + ",\"path\":\"" + request.path + "\",\"body\":" + body + "}\n");
+			this.record.flush();
+		}
+	}
+
+	private void delay() {
+		int delay = this.latencyMillis;
+		if (this.jitterMillis > 0) {
+			synchronized (this.random) {
+				delay += this.random.nextInt(this.jitterMillis + 1);
+			}
+		}
+		if (delay > 0) {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private boolean roll(double rate) {
+		if (rate <= 0) {
+			return false;
+		}
+		synchronized (this.random) {
+			return this.random.nextDouble() < rate;
+		}
+	}
+
+	private static int endpointIndex(String path) {
+		for (int i = 0; i < ENDPOINTS.length; i++) {
+			if (ENDPOINTS[i].equals(path)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	// Just enough HTTP/1.1 request parsing for GameSense clients: a request line,
+	// headers, and a body of Content-Length bytes.
+	private static class Request {
+		String method;
+		String path;
+		String body;
+		boolean close;
+
+		private final StringBuilder line = new StringBuilder();
+
+		// Returns false when the client closed the connection between requests.
+		boolean read(InputStream in) throws IOException {
+			String requestLine = readLine(in);
+			while (requestLine != null && requestLine.isEmpty()) {
+				requestLine = readLine(in);
+			}
+			if (requestLine == null) {
+				return false;
+			}
+			String[] parts = requestLine.split(" ");
+			if (parts.length < 3) {
+				throw new IOException("Bad request line: " + requestLine);
+			}
+			this.method = parts[0];
+			this.path = parts[1];
+			this.close = parts[2].equals("HTTP/1.0");
+
+			int contentLength = 0;
+			String header;
+			while ((header = readLine(in)) != null && !header.isEmpty()) {
+				int colon = header.indexOf(':');
+				if (colon < 0) {
+					continue;
+				}
+				String name = header.substring(0, colon).trim();
+				String value = header.substring(colon + 1).trim();
+				if (name.equalsIgnoreCase("Content-Length")) {
+					contentLength = Integer.parseInt(value);
+				} else if (name.equalsIgnoreCase("Connection")) {
+					this.close = value.equalsIgnoreCase("close");
+				}
+			}
+			if (header == null) {
+				throw new IOException("Connection closed in the headers");
+			}
+
+			byte[] content = new byte[contentLength];
+			int read = 0;
+			while (read < contentLength) {
+				int n = in.read(content, read, contentLength - read);
+				if (n < 0) {
+					throw new IOException("Connection closed in the body");
+				}
+				read += n;
+			}
+			this.body = new String(content, UTF_8);
+			return true;
+		}
+
+		private String readLine(InputStream in) throws IOException {
+			this.line.setLength(0);
+			int c;
+			while ((c = in.read()) >= 0) {
+				if (c == '\n') {
+					int end = this.line.length();
+					if (end > 0 && this.line.charAt(end - 1) == '\r') {
+						this.line.setLength(end - 1);
+					}
+					return this.line.toString();
+				}
+				this.line.append((char) c);
+			}
+			return this.line.length() > 0 ? this.line.toString() : null;
+		}
+	}
+}